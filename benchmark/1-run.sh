@@ -0,0 +1,3 @@
+(cd ../function && mvn clean install)
+mvn clean package
+java -jar target/benchmarks.jar -prof gc "$@"
@@ -0,0 +1,64 @@
+package example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decoding a gzip-compressed API page: what gzipBodyHandler used to do (GZIPInputStream into one
+ * String) against DecompressingBodyHandler's pooled, incremental inflation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecompressBenchmark {
+
+    private byte[] compressedPage;
+    private final byte[] sink = new byte[8192];
+
+    @Setup
+    public void setUp() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(Samples.bytes(Samples.REJECTIONS_PAGE));
+        }
+        compressedPage = compressed.toByteArray();
+    }
+
+    @Benchmark
+    public String gzipToString() throws Exception {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedPage))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public long decompressingBodyHandler() throws Exception {
+        long total = 0;
+        try (InputStream in = DecompressingBodyHandler.decode(new ByteArrayInputStream(compressedPage), "gzip")) {
+            int n;
+            while ((n = in.read(sink, 0, sink.length)) != -1) {
+                total += n;
+            }
+        }
+        return total;
+    }
+}
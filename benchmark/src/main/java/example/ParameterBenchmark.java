@@ -0,0 +1,52 @@
+package example;
+
+import gov.uspto.patent.PatentDocFormat;
+import gov.uspto.patent.PatentReader;
+import gov.uspto.patent.model.Patent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.rdsdata.model.SqlParameter;
+import software.amazon.awssdk.services.rdsdata.model.TypeHint;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the Data API parameters for one application row, and a single SqlParameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParameterBenchmark {
+
+    private Patent patent;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (StringReader rawText = new StringReader(Samples.text(Samples.PATENT_XML))) {
+            patent = new PatentReader(PatentDocFormat.RedbookApplication).read(rawText);
+        }
+    }
+
+    @Benchmark
+    public SqlParameter param() {
+        return ProcessS3AppPatentEventLambda.param("filingDate", "2023-12-17", TypeHint.DATE);
+    }
+
+    @Benchmark
+    public List<SqlParameter> toParameters() throws Exception {
+        return ProcessS3AppPatentEventLambda.toParameters(patent);
+    }
+}
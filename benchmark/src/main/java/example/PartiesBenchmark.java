@@ -0,0 +1,51 @@
+package example;
+
+import gov.uspto.patent.PatentDocFormat;
+import gov.uspto.patent.PatentReader;
+import gov.uspto.patent.model.Patent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The inventors column of one patent: the old serialize, filterParties, pretty-print round trip
+ * against the streaming projection that replaced it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartiesBenchmark {
+
+    private Patent patent;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (StringReader rawText = new StringReader(Samples.text(Samples.PATENT_XML))) {
+            patent = new PatentReader(PatentDocFormat.RedbookApplication).read(rawText);
+        }
+    }
+
+    @Benchmark
+    public String filterParties() throws Exception {
+        String inventors = Resources.objectMapper().writeValueAsString(patent.getInventors());
+        return ProcessS3AppPatentEventLambda.filterParties(inventors);
+    }
+
+    @Benchmark
+    public String partyProjection() throws Exception {
+        return PartyProjection.toJson(patent.getInventors());
+    }
+}
@@ -0,0 +1,65 @@
+package example;
+
+import gov.uspto.patent.PatentDocFormat;
+import gov.uspto.patent.PatentReader;
+import gov.uspto.patent.model.Patent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one publication document, and splitting a concatenated dump into documents the way
+ * the streaming ingest path does before handing them to the parser workers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatentReaderBenchmark {
+
+    private static final int DOCUMENTS_PER_DUMP = 200;
+
+    private String document;
+    private byte[] dump;
+    private PatentReader patentReader;
+
+    @Setup
+    public void setUp() {
+        document = Samples.text(Samples.PATENT_XML);
+        String trimmed = document.endsWith("\n") ? document : document + "\n";
+        dump = trimmed.repeat(DOCUMENTS_PER_DUMP).getBytes(StandardCharsets.UTF_8);
+        patentReader = new PatentReader(PatentDocFormat.RedbookApplication);
+    }
+
+    @Benchmark
+    public Patent read() throws Exception {
+        try (StringReader rawText = new StringReader(document)) {
+            return patentReader.read(rawText);
+        }
+    }
+
+    @Benchmark
+    public int splitDump() throws Exception {
+        int documents = 0;
+        try (XmlDocumentStream stream = new XmlDocumentStream(new ByteArrayInputStream(dump), false)) {
+            while (stream.next() != null) {
+                documents++;
+            }
+        }
+        return documents;
+    }
+}
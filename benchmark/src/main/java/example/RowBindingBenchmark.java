@@ -0,0 +1,63 @@
+package example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-record work of the oa_rejections path: streaming a page and binding the 25 columns of
+ * every record through RecordBinder into a COPY-mode BulkLoader (against a connection stand-in,
+ * so no database is involved).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowBindingBenchmark {
+
+    private byte[] page;
+    private Connection connection;
+
+    @Setup
+    public void setUp() {
+        page = Samples.bytes(Samples.REJECTIONS_PAGE);
+        connection = copyConnection();
+    }
+
+    @Benchmark
+    public long streamAndBindPage() throws Exception {
+        BulkLoader loader = newLoader();
+        return JsonArrayStreamer.forEachRecord(Resources.objectMapper(), new ByteArrayInputStream(page),
+                parser -> RejectionLambda.REJECTION_BINDER.bind(parser, loader), "response", "docs");
+    }
+
+    private BulkLoader newLoader() throws Exception {
+        return new BulkLoader(connection, "rejections", RejectionLambda.REJECTION_COLUMNS, BulkLoader.Mode.COPY);
+    }
+
+    /**
+     * Just enough of a PostgreSQL connection for BulkLoader to pick COPY mode and stage rows.
+     */
+    private static Connection copyConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "isWrapperFor" -> true;
+                    case "setAutoCommit" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,34 @@
+package example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sample inputs bundled under src/main/resources/samples: a publication XML document in the
+ * weekly dump format and a page of the oa_rejections API in its response shape.
+ */
+final class Samples {
+
+    static final String PATENT_XML = "ipab-sample.xml";
+    static final String REJECTIONS_PAGE = "oa_rejections-page.json";
+
+    private Samples() {
+    }
+
+    static byte[] bytes(String name) {
+        try (InputStream in = Samples.class.getResourceAsStream("/samples/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing sample " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String text(String name) {
+        return new String(bytes(name), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,16 @@
+-- Continuity edges from a patent's application number to the application numbers it continues.
+-- RelationGraph snapshots are rebuilt from this table: each records the last id it has read.
+--
+-- Earlier edges were keyed by publication number on the child side; they are kept aside under
+-- another name rather than mixed in, and re-ingesting the archives writes them again.
+ALTER TABLE IF EXISTS applications_relations RENAME TO applications_relations_by_publication;
+
+CREATE TABLE applications_relations (
+    id bigserial PRIMARY KEY,
+    applicationNumber text NOT NULL,
+    relatedApplicationNumber text NOT NULL,
+    relationType text NOT NULL,
+    UNIQUE (applicationNumber, relatedApplicationNumber, relationType)
+);
+
+CREATE INDEX applications_relations_related_idx ON applications_relations (relatedApplicationNumber);
@@ -0,0 +1,7 @@
+-- applications.applicationId holds the publication number; the application number that
+-- rejections, proceedings and continuity data refer to gets a column of its own.
+-- Rows ingested before this migration keep a null applicationNumber until their archive is
+-- ingested again, so LookupLambda does not find them by application number.
+ALTER TABLE applications ADD COLUMN IF NOT EXISTS applicationNumber text;
+
+CREATE INDEX IF NOT EXISTS applications_applicationnumber_idx ON applications (applicationNumber);
@@ -0,0 +1,21 @@
+-- PtabLambda upserts proceedings with ON CONFLICT (proceedingNumber), which needs a unique index.
+--
+-- Proceeding numbers are strings such as IPR2019-01234, but they used to be bound as integers,
+-- so every non-numeric one was stored as 0. The column becomes text first. Rows stored as 0 can
+-- no longer be told apart and are deleted; run a full sync afterwards to load them again.
+ALTER TABLE proceeding ALTER COLUMN proceedingNumber TYPE text USING proceedingNumber::text;
+
+DELETE FROM proceeding WHERE proceedingNumber = '0';
+
+-- Full syncs used to insert without a unique index, so a proceeding may be stored more than
+-- once; only its most recently modified row is kept.
+DELETE FROM proceeding p
+USING (
+    SELECT ctid, row_number() OVER (PARTITION BY proceedingNumber
+                                    ORDER BY proceedingLastModifiedDate DESC NULLS LAST) AS rank
+    FROM proceeding
+    WHERE proceedingNumber IS NOT NULL
+) ranked
+WHERE p.ctid = ranked.ctid AND ranked.rank > 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS proceeding_proceedingnumber_idx ON proceeding (proceedingNumber);
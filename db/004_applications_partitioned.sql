@@ -0,0 +1,48 @@
+-- Converts an existing plain applications table into the range-partitioned layout that
+-- ProcessS3AppPatentEventLambda creates on an empty database: one partition per filingDate year
+-- (APPLICATION_PARTITIONS=year, the default), named applications_<yyyy>, plus a DEFAULT partition
+-- for rows without a filingDate. The writer adds partitions for new years by itself.
+--
+-- Runs in one transaction. The old table is kept as applications_heap; drop it once the counts
+-- printed at the end agree.
+BEGIN;
+
+ALTER TABLE applications RENAME TO applications_heap;
+ALTER INDEX IF EXISTS applications_applicationid_idx RENAME TO applications_heap_applicationid_idx;
+ALTER INDEX IF EXISTS applications_applicationnumber_idx RENAME TO applications_heap_applicationnumber_idx;
+
+CREATE TABLE applications (
+    applicationId text NOT NULL,
+    filingDate date,
+    inventionTitle text,
+    inventors jsonb,
+    applicants jsonb,
+    assignees jsonb,
+    applicationNumber text
+) PARTITION BY RANGE (filingDate);
+
+DO $$
+DECLARE
+    y int;
+BEGIN
+    FOR y IN SELECT DISTINCT extract(year FROM filingDate)::int FROM applications_heap WHERE filingDate IS NOT NULL LOOP
+        EXECUTE format('CREATE TABLE applications_%s PARTITION OF applications FOR VALUES FROM (%L) TO (%L)',
+                       lpad(y::text, 4, '0'), make_date(y, 1, 1), make_date(y + 1, 1, 1));
+    END LOOP;
+END $$;
+
+-- a NULL range key can only go to the default partition
+CREATE TABLE applications_default PARTITION OF applications DEFAULT;
+
+INSERT INTO applications (applicationId, filingDate, inventionTitle, inventors, applicants, assignees, applicationNumber)
+SELECT applicationId, filingDate, inventionTitle, inventors::jsonb, applicants::jsonb, assignees::jsonb, applicationNumber
+FROM applications_heap;
+
+CREATE INDEX applications_applicationid_idx ON applications (applicationId);
+CREATE INDEX applications_applicationnumber_idx ON applications (applicationNumber);
+
+COMMIT;
+
+SELECT (SELECT count(*) FROM applications_heap) AS heap_rows,
+       (SELECT count(*) FROM applications) AS partitioned_rows,
+       (SELECT count(*) FROM applications_default) AS rows_without_filing_date;
@@ -0,0 +1,17 @@
+-- Spools are replayed at least once from their committed offset, so the same application row can
+-- be inserted again; the insert skips it with ON CONFLICT DO NOTHING against this unique index.
+-- It includes filingDate because a unique index on a partitioned table must hold the partition
+-- key, and it makes the plain applicationId index redundant.
+--
+-- Replays before this migration may already have stored duplicates; one row of each is kept.
+DELETE FROM applications a
+USING (
+    SELECT tableoid, ctid, row_number() OVER (PARTITION BY applicationId, filingDate) AS rank
+    FROM applications
+    WHERE filingDate IS NOT NULL
+) ranked
+WHERE a.tableoid = ranked.tableoid AND a.ctid = ranked.ctid AND ranked.rank > 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS applications_applicationid_filingdate_key ON applications (applicationId, filingDate);
+
+DROP INDEX IF EXISTS applications_applicationid_idx;
@@ -0,0 +1,13 @@
+-- RejectionLambda upserts rejections with ON CONFLICT (id), which needs a unique index: resumed
+-- backfills and repeated pages load rows that are already stored.
+-- Pages loaded twice before this migration may have stored a rejection more than once; one row
+-- of each is kept.
+DELETE FROM rejections r
+USING (
+    SELECT ctid, row_number() OVER (PARTITION BY id) AS rank
+    FROM rejections
+    WHERE id IS NOT NULL
+) ranked
+WHERE r.ctid = ranked.ctid AND ranked.rank > 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS rejections_id_idx ON rejections (id);
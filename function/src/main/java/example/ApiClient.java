@@ -0,0 +1,182 @@
+package example;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * HttpClient front for the USPTO APIs: every request first takes a token from a shared
+ * {@link RateLimiter}, and only a 2xx response (or a 304 answering a conditional request) is
+ * handed back.
+ * <p>
+ * 429, 408 and 5xx responses and I/O failures are retried up to {@code maxAttempts} times with
+ * full-jitter exponential backoff, or after the server's Retry-After when it sends one. A 429
+ * also slows the limiter for every caller. The body of a failed response is discarded unread, so
+ * an error page is never parsed as an empty page. Any other status, or running out of attempts,
+ * ends in an {@link ApiException}.
+ */
+public class ApiClient {
+
+    /**
+     * A response that was not 2xx, or still failing after the last attempt.
+     */
+    public static class ApiException extends IOException {
+        private final int statusCode;
+
+        public ApiException(String message, int statusCode, Throwable cause) {
+            super(message, cause);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return the last HTTP status, or -1 if the last attempt failed without a response
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    private final HttpClient client;
+    private final RateLimiter limiter;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Duration requestTimeout;
+    private Metrics metrics = Metrics.NOOP;
+
+    /**
+     * @param requestTimeout applied to requests that do not set their own, so a hung response is
+     *                       retried like any other failure
+     */
+    public ApiClient(HttpClient client, RateLimiter limiter, int maxAttempts, long baseBackoffMillis, long maxBackoffMillis,
+                     Duration requestTimeout) {
+        this.client = client;
+        this.limiter = limiter;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * USPTO_API_RATE (requests per second, default 4), USPTO_API_BURST (default 8),
+     * USPTO_API_MAX_ATTEMPTS (default 6), USPTO_API_MAX_BACKOFF_MS (default 60000) and
+     * USPTO_API_TIMEOUT_SECONDS (default 60).
+     */
+    public static ApiClient fromEnvironment(HttpClient client) {
+        return new ApiClient(client,
+                new RateLimiter(ProcessS3AppPatentEventLambda.intEnv("USPTO_API_RATE", 4),
+                        ProcessS3AppPatentEventLambda.intEnv("USPTO_API_BURST", 8)),
+                ProcessS3AppPatentEventLambda.intEnv("USPTO_API_MAX_ATTEMPTS", 6),
+                500,
+                ProcessS3AppPatentEventLambda.intEnv("USPTO_API_MAX_BACKOFF_MS", 60_000),
+                Duration.ofSeconds(ProcessS3AppPatentEventLambda.intEnv("USPTO_API_TIMEOUT_SECONDS", 60)));
+    }
+
+    /**
+     * Retries are counted as ApiRetries, 429s as ApiThrottled, and the limiter's current rate is
+     * recorded as the ApiRequestRate gauge.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RateLimiter getLimiter() {
+        return limiter;
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        if (request.timeout().isEmpty()) {
+            request = HttpRequest.newBuilder(request, (name, value) -> true).timeout(requestTimeout).build();
+        }
+        HttpResponse.BodyHandler<T> discardingErrors = responseInfo -> isSuccess(responseInfo.statusCode())
+                ? bodyHandler.apply(responseInfo)
+                : HttpResponse.BodySubscribers.replacing(null);
+
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquire();
+            HttpResponse<T> response;
+            try {
+                response = client.send(request, discardingErrors);
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    throw new ApiException(request.method() + " " + request.uri() + " failed after " + attempt
+                            + " attempts: " + e.getMessage(), -1, e);
+                }
+                retryAfter(request, attempt, backoffMillis(attempt), e.getMessage());
+                continue;
+            }
+
+            int status = response.statusCode();
+            if (isSuccess(status) || status == 304) {
+                limiter.onSuccess();
+                metrics.gauge("ApiRequestRate", limiter.getRate(), Metrics.Unit.COUNT_PER_SECOND);
+                return response;
+            }
+            if (!isRetryable(status)) {
+                throw new ApiException(request.method() + " " + request.uri() + " returned HTTP " + status, status, null);
+            }
+            if (attempt >= maxAttempts) {
+                throw new ApiException(request.method() + " " + request.uri() + " still returned HTTP " + status
+                        + " after " + attempt + " attempts", status, null);
+            }
+            long retryAfter = retryAfterMillis(response);
+            long delay = retryAfter >= 0 ? Math.min(retryAfter, maxBackoffMillis) : backoffMillis(attempt);
+            if (status == 429) {
+                metrics.count("ApiThrottled", 1);
+                limiter.onThrottled(delay);
+                metrics.gauge("ApiRequestRate", limiter.getRate(), Metrics.Unit.COUNT_PER_SECOND);
+            }
+            retryAfter(request, attempt, delay, "HTTP " + status);
+        }
+    }
+
+    static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    static boolean isRetryable(int status) {
+        return status == 429 || status == 408 || status >= 500;
+    }
+
+    /**
+     * Full jitter: uniformly random up to base * 2^(attempt-1), capped at the max backoff.
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return the Retry-After header in milliseconds (delta-seconds or HTTP-date), or -1
+     */
+    static long retryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse("").trim();
+        if (value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    private void retryAfter(HttpRequest request, int attempt, long delayMillis, String reason) throws InterruptedException {
+        metrics.count("ApiRetries", 1);
+        System.out.println("Retrying " + request.uri() + " in " + delayMillis + " ms after attempt " + attempt + " (" + reason + ")");
+        Thread.sleep(delayMillis);
+    }
+}
@@ -0,0 +1,140 @@
+package example;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * In-memory index of the applicationId values already loaded into the applications table, used
+ * to skip documents before they are parsed. Ids are kept as primitive longs in a
+ * {@link LongOpenHashSet}; ids that are not purely numeric are never indexed and always go
+ * through the normal parse and write path.
+ * <p>
+ * The index is snapshotted to local disk (which survives warm invocations) and optionally to S3
+ * (so cold containers start warm as well).
+ */
+public class ApplicationIdIndex {
+
+    private static final int MAGIC = 0x41494458; // "AIDX"
+    private static final String PUBLICATION_REFERENCE = "<publication-reference";
+    private static final String DOC_NUMBER_OPEN = "<doc-number>";
+    private static final String DOC_NUMBER_CLOSE = "</doc-number>";
+
+    private final LongOpenHashSet ids;
+
+    public ApplicationIdIndex(LongOpenHashSet ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Negative keys (ids {@link #toKey} could not convert) are never contained and never added.
+     */
+    public synchronized boolean contains(long applicationId) {
+        return applicationId >= 0 && ids.contains(applicationId);
+    }
+
+    public synchronized boolean add(long applicationId) {
+        return applicationId >= 0 && ids.add(applicationId);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the numeric form of {@code applicationId}, or -1 if it is missing or not numeric
+     */
+    public static long toKey(String applicationId) {
+        if (applicationId == null || applicationId.isEmpty() || applicationId.length() > 18) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < applicationId.length(); i++) {
+            char c = applicationId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    /**
+     * Pulls the id the writer stores as applicationId (the publication-reference doc-number, which
+     * PatentReader exposes as getDocumentId()) straight out of the raw XML, without parsing it.
+     *
+     * @return the numeric id, or -1 if it cannot be found
+     */
+    public static long peekDocNumber(String rawDocument) {
+        int reference = rawDocument.indexOf(PUBLICATION_REFERENCE);
+        if (reference < 0) {
+            return -1;
+        }
+        int start = rawDocument.indexOf(DOC_NUMBER_OPEN, reference);
+        if (start < 0) {
+            return -1;
+        }
+        start += DOC_NUMBER_OPEN.length();
+        int end = rawDocument.indexOf(DOC_NUMBER_CLOSE, start);
+        return end < 0 ? -1 : toKey(rawDocument.substring(start, end).trim());
+    }
+
+    /**
+     * Loads the local snapshot if there is one, otherwise the S3 snapshot if a bucket is given,
+     * otherwise starts empty.
+     */
+    public static ApplicationIdIndex load(Path localPath, S3Client s3Client, String bucket, String key) {
+        try {
+            if (Files.exists(localPath)) {
+                try (InputStream in = Files.newInputStream(localPath)) {
+                    return read(in);
+                }
+            }
+            if (bucket != null) {
+                try (InputStream in = s3Client.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build())) {
+                    return read(in);
+                } catch (NoSuchKeyException e) {
+                    System.out.println("No application index snapshot at s3://" + bucket + "/" + key);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable application index snapshot: " + e.getMessage());
+        }
+        return new ApplicationIdIndex(new LongOpenHashSet(1 << 20));
+    }
+
+    public synchronized void save(Path localPath, S3Client s3Client, String bucket, String key) throws IOException {
+        Path tmp = localPath.resolveSibling(localPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            ids.writeTo(out);
+        }
+        Files.move(tmp, localPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (bucket != null) {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromFile(localPath));
+        }
+        System.out.println("Saved application index with " + ids.size() + " ids");
+    }
+
+    private static ApplicationIdIndex read(InputStream raw) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an application index snapshot");
+        }
+        ApplicationIdIndex index = new ApplicationIdIndex(LongOpenHashSet.readFrom(in));
+        System.out.println("Loaded application index with " + index.size() + " ids");
+        return index;
+    }
+}
@@ -0,0 +1,49 @@
+package example;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Process-wide pools of fixed-size byte buffers and Inflaters, so decoding a page does not
+ * allocate a fresh 64 KiB buffer and native zlib state every time. Pools are bounded; anything
+ * returned past capacity is simply dropped (and, for Inflaters, ended).
+ */
+public final class BufferPool {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED = 32;
+
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final BlockingQueue<Inflater> GZIP_INFLATERS = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final BlockingQueue<Inflater> ZLIB_INFLATERS = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private BufferPool() {
+    }
+
+    public static byte[] acquireBuffer() {
+        byte[] buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    public static void releaseBuffer(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE) {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * @param nowrap true for raw deflate data (the body of a gzip member), false for zlib-wrapped data
+     */
+    public static Inflater acquireInflater(boolean nowrap) {
+        Inflater inflater = (nowrap ? GZIP_INFLATERS : ZLIB_INFLATERS).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    public static void releaseInflater(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? GZIP_INFLATERS : ZLIB_INFLATERS).offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package example;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Stages the rows of one API page and loads them into a table in a single round trip.
+ * <p>
+ * In {@link Mode#COPY} the page is encoded in PostgreSQL's COPY text format and streamed through
+ * {@code COPY table (columns) FROM STDIN}. {@link Mode#BATCH} falls back to a single reused
+ * PreparedStatement and {@code executeBatch()}, and is picked automatically when the connection
+ * is not a PostgreSQL one. Either way {@link #flush()} commits the page as one transaction.
+ * <p>
+ * Given a conflict column, rows are upserted instead: an existing row with the same key is
+ * overwritten. COPY then goes into a temporary staging table that is merged with
+ * {@code INSERT .. SELECT .. ON CONFLICT DO UPDATE}, and the batch path adds the same ON CONFLICT
+ * clause to its INSERT. The table needs a unique index on the conflict column. When a COPY page
+ * repeats a key, the row with the greatest {@code latestColumn} value wins the merge.
+ * <p>
+ * Values are set column by column in declaration order and each row is closed with
+ * {@link #endRow()}:
+ * <pre>
+ *   loader.setString(id).setInt(groupArtUnit).setBoolean(hasRej101).endRow();
+ * </pre>
+ */
+public class BulkLoader implements AutoCloseable {
+
+    public enum Mode {
+        COPY, BATCH
+    }
+
+    private static final String NULL = "\\N";
+
+    private final Connection con;
+    private final String[] columns;
+    private final Mode mode;
+    private final String copySql;
+    private final String mergeSql;
+    private final PreparedStatement pstmt;
+    private final StringBuilder copyBuffer = new StringBuilder(1 << 16);
+
+    private int column = 0;
+    private int stagedRows = 0;
+    private Metrics metrics = Metrics.NOOP;
+
+    public BulkLoader(Connection con, String table, String[] columns, Mode mode) throws SQLException {
+        this(con, table, columns, mode, null);
+    }
+
+    public BulkLoader(Connection con, String table, String[] columns, Mode mode, String conflictColumn) throws SQLException {
+        this(con, table, columns, mode, conflictColumn, null);
+    }
+
+    /**
+     * @param conflictColumn column to upsert on, or null to only insert
+     * @param latestColumn   column whose greatest value picks the row kept among staged rows with
+     *                       the same key, or null to keep any one of them
+     */
+    public BulkLoader(Connection con, String table, String[] columns, Mode mode, String conflictColumn,
+                      String latestColumn) throws SQLException {
+        this.con = con;
+        this.columns = columns;
+        this.mode = mode == Mode.COPY && con.isWrapperFor(PGConnection.class) ? Mode.COPY : Mode.BATCH;
+        String columnList = String.join(", ", columns);
+        String onConflict = conflictColumn == null ? "" : onConflictClause(columns, conflictColumn);
+        if (this.mode == Mode.COPY && conflictColumn != null) {
+            String stage = table + "_stage";
+            try (Statement statement = con.createStatement()) {
+                statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + stage + " (LIKE " + table
+                        + " INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+            }
+            this.copySql = "COPY " + stage + " (" + columnList + ") FROM STDIN";
+            // a page may repeat a key, which a single INSERT .. ON CONFLICT cannot update twice;
+            // DISTINCT ON keeps the first row of each key in ORDER BY order
+            this.mergeSql = "INSERT INTO " + table + " (" + columnList + ") SELECT DISTINCT ON (" + conflictColumn + ") "
+                    + columnList + " FROM " + stage + " ORDER BY " + conflictColumn
+                    + (latestColumn == null ? "" : ", " + latestColumn + " DESC NULLS LAST") + onConflict;
+            this.pstmt = null;
+        } else if (this.mode == Mode.COPY) {
+            this.copySql = "COPY " + table + " (" + columnList + ") FROM STDIN";
+            this.mergeSql = null;
+            this.pstmt = null;
+        } else {
+            this.copySql = null;
+            this.mergeSql = null;
+            this.pstmt = con.prepareStatement("INSERT INTO " + table + " (" + columnList + ") VALUES ("
+                    + "?, ".repeat(columns.length - 1) + "?)" + onConflict);
+        }
+        con.setAutoCommit(false);
+    }
+
+    /**
+     * BULK_LOAD_MODE=batch switches every loader to the JDBC batch path.
+     */
+    public static Mode modeFromEnvironment() {
+        return "batch".equalsIgnoreCase(System.getenv("BULK_LOAD_MODE")) ? Mode.BATCH : Mode.COPY;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Every flush is timed as BatchFlushLatency and its loaded rows counted in RowsWritten.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public BulkLoader setString(String value) throws SQLException {
+        if (value == null) {
+            return setNull();
+        }
+        if (mode == Mode.COPY) {
+            appendEscaped(value);
+            return nextColumn();
+        }
+        pstmt.setString(column + 1, value);
+        return nextColumn();
+    }
+
+    public BulkLoader setInt(int value) throws SQLException {
+        if (mode == Mode.COPY) {
+            copyBuffer.append(value);
+            return nextColumn();
+        }
+        pstmt.setInt(column + 1, value);
+        return nextColumn();
+    }
+
+    public BulkLoader setBoolean(boolean value) throws SQLException {
+        if (mode == Mode.COPY) {
+            copyBuffer.append(value ? 't' : 'f');
+            return nextColumn();
+        }
+        pstmt.setBoolean(column + 1, value);
+        return nextColumn();
+    }
+
+    public BulkLoader setDate(LocalDate value) throws SQLException {
+        if (value == null) {
+            return setNull();
+        }
+        if (mode == Mode.COPY) {
+            copyBuffer.append(value);
+            return nextColumn();
+        }
+        pstmt.setDate(column + 1, java.sql.Date.valueOf(value));
+        return nextColumn();
+    }
+
+    public BulkLoader setTimestamp(LocalDateTime value) throws SQLException {
+        if (value == null) {
+            return setNull();
+        }
+        if (mode == Mode.COPY) {
+            copyBuffer.append(value);
+            return nextColumn();
+        }
+        pstmt.setTimestamp(column + 1, Timestamp.valueOf(value));
+        return nextColumn();
+    }
+
+    public BulkLoader setTextArray(String[] values) throws SQLException {
+        if (values == null) {
+            return setNull();
+        }
+        if (mode == Mode.COPY) {
+            StringBuilder literal = new StringBuilder().append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    literal.append(',');
+                }
+                literal.append('"')
+                        .append(values[i].replace("\\", "\\\\").replace("\"", "\\\""))
+                        .append('"');
+            }
+            appendEscaped(literal.append('}').toString());
+            return nextColumn();
+        }
+        pstmt.setArray(column + 1, con.createArrayOf("text", values));
+        return nextColumn();
+    }
+
+    public BulkLoader setNull() throws SQLException {
+        if (mode == Mode.COPY) {
+            copyBuffer.append(NULL);
+            return nextColumn();
+        }
+        pstmt.setNull(column + 1, Types.NULL);
+        return nextColumn();
+    }
+
+    public void endRow() throws SQLException {
+        if (column != columns.length) {
+            throw new IllegalStateException("Row has " + column + " values, expected " + columns.length);
+        }
+        if (mode == Mode.COPY) {
+            copyBuffer.setLength(copyBuffer.length() - 1);
+            copyBuffer.append('\n');
+        } else {
+            pstmt.addBatch();
+        }
+        column = 0;
+        stagedRows++;
+    }
+
+    public int getStagedRows() {
+        return stagedRows;
+    }
+
+    /**
+     * Sends every staged row in one round trip and commits them. On failure the page is rolled
+     * back and discarded, and the exception is rethrown.
+     *
+     * @return number of rows loaded
+     */
+    public long flush() throws SQLException {
+        if (stagedRows == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        try {
+            long loaded;
+            if (mode == Mode.COPY) {
+                CopyManager copyManager = con.unwrap(PGConnection.class).getCopyAPI();
+                loaded = copyManager.copyIn(copySql, new StringReader(copyBuffer.toString()));
+                if (mergeSql != null) {
+                    try (Statement statement = con.createStatement()) {
+                        loaded = statement.executeUpdate(mergeSql);
+                    }
+                }
+            } else {
+                loaded = 0;
+                for (int count : pstmt.executeBatch()) {
+                    loaded += Math.max(count, 0);
+                }
+            }
+            con.commit();
+            metrics.time("BatchFlushLatency", System.nanoTime() - start);
+            metrics.count("RowsWritten", loaded);
+            return loaded;
+        } catch (SQLException | IOException e) {
+            con.rollback();
+            throw e instanceof SQLException ? (SQLException) e : new SQLException("COPY failed", e);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Drops the rows staged since the last flush, e.g. of a page whose response broke off.
+     */
+    public void discard() throws SQLException {
+        reset();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        reset();
+        if (pstmt != null) {
+            pstmt.close();
+        }
+    }
+
+    private void reset() throws SQLException {
+        copyBuffer.setLength(0);
+        if (pstmt != null) {
+            pstmt.clearBatch();
+        }
+        column = 0;
+        stagedRows = 0;
+    }
+
+    private static String onConflictClause(String[] columns, String conflictColumn) {
+        StringBuilder clause = new StringBuilder(" ON CONFLICT (").append(conflictColumn).append(") DO UPDATE SET ");
+        boolean first = true;
+        for (String column : columns) {
+            if (column.equals(conflictColumn)) {
+                continue;
+            }
+            if (!first) {
+                clause.append(", ");
+            }
+            clause.append(column).append(" = EXCLUDED.").append(column);
+            first = false;
+        }
+        return clause.toString();
+    }
+
+    private BulkLoader nextColumn() {
+        column++;
+        if (mode == Mode.COPY) {
+            copyBuffer.append('\t');
+        }
+        return this;
+    }
+
+    private void appendEscaped(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    copyBuffer.append("\\\\");
+                    break;
+                case '\t':
+                    copyBuffer.append("\\t");
+                    break;
+                case '\n':
+                    copyBuffer.append("\\n");
+                    break;
+                case '\r':
+                    copyBuffer.append("\\r");
+                    break;
+                default:
+                    copyBuffer.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package example;
+
+import java.util.TreeMap;
+
+/**
+ * Offset checkpoint for work that completes out of order. Completed ranges past the watermark are
+ * parked until the gap in front of them is filled, so the watermark only ever covers a contiguous
+ * prefix of finished work.
+ */
+public class ContiguousCheckpoint {
+
+    private final TreeMap<Long, Long> pending = new TreeMap<>();
+    private long watermark;
+
+    public ContiguousCheckpoint(long start) {
+        this.watermark = start;
+    }
+
+    /**
+     * Marks [from, to) as done.
+     *
+     * @return true if the watermark moved
+     */
+    public synchronized boolean complete(long from, long to) {
+        if (to <= watermark) {
+            return false;
+        }
+        pending.merge(from, to, Math::max);
+        long before = watermark;
+        while (!pending.isEmpty() && pending.firstKey() <= watermark) {
+            watermark = Math.max(watermark, pending.pollFirstEntry().getValue());
+        }
+        return watermark != before;
+    }
+
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    public synchronized int getPendingRanges() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,235 @@
+package example;
+
+import software.amazon.awssdk.services.rdsdata.RdsDataClient;
+import software.amazon.awssdk.services.rdsdata.model.BadRequestException;
+import software.amazon.awssdk.services.rdsdata.model.BatchExecuteStatementRequest;
+import software.amazon.awssdk.services.rdsdata.model.BeginTransactionRequest;
+import software.amazon.awssdk.services.rdsdata.model.CommitTransactionRequest;
+import software.amazon.awssdk.services.rdsdata.model.DatabaseErrorException;
+import software.amazon.awssdk.services.rdsdata.model.RollbackTransactionRequest;
+import software.amazon.awssdk.services.rdsdata.model.SqlParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects parameter sets for one SQL statement and sends them through BatchExecuteStatement
+ * instead of one ExecuteStatement round trip per row.
+ * <p>
+ * A flush happens once {@code maxRows} sets or {@code maxBytes} of estimated payload are
+ * buffered, or when the oldest buffered set is older than {@code maxDelayMillis}. Each flush is
+ * cut into requests that stay under the Data API payload and parameter-set limits and every
+ * request runs in its own BeginTransaction/CommitTransaction. If the Data API or the database
+ * rejects a request it is bisected and retried, so an oversized batch or a single bad row only
+ * costs that row. Any other failure (throttling, connectivity) is rethrown. Parameter sets leave
+ * the buffer as soon as the transaction holding them commits (or they are skipped), so after such
+ * a failure the next flush resends only what has not been committed, even midway through a
+ * bisection.
+ * <p>
+ * Not thread-safe; meant to be driven from the pipeline's writer stage.
+ */
+public class DataApiBatchWriter implements AutoCloseable {
+
+    /** BatchExecuteStatement rejects requests over 4 MiB; keep some headroom for the envelope. */
+    static final int MAX_REQUEST_BYTES = 3 * 1024 * 1024;
+    static final int MAX_PARAMETER_SETS = 1000;
+    private static final int PARAMETER_OVERHEAD_BYTES = 64;
+
+    private final RdsDataClient rdsDataClient;
+    private final String resourceArn;
+    private final String secretArn;
+    private final String database;
+    private final String sql;
+    private final int maxRows;
+    private final int maxBytes;
+    private final long maxDelayMillis;
+
+    private final List<List<SqlParameter>> buffer = new ArrayList<>();
+    private final List<Integer> bufferSizes = new ArrayList<>();
+    private int bufferedBytes = 0;
+    private long oldestBufferedAt = 0;
+
+    private Consumer<List<SqlParameter>> commitListener = parameterSet -> {
+    };
+    private Metrics metrics = Metrics.NOOP;
+
+    private long rowsWritten = 0;
+    private long rowsFailed = 0;
+    private long flushNanos = 0;
+
+    public DataApiBatchWriter(RdsDataClient rdsDataClient, String resourceArn, String secretArn, String database,
+                              String sql, int maxRows, int maxBytes, long maxDelayMillis) {
+        this.rdsDataClient = rdsDataClient;
+        this.resourceArn = resourceArn;
+        this.secretArn = secretArn;
+        this.database = database;
+        this.sql = sql;
+        this.maxRows = Math.min(maxRows, MAX_PARAMETER_SETS);
+        this.maxBytes = Math.min(maxBytes, MAX_REQUEST_BYTES);
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Called once for every parameter set after the transaction holding it has committed.
+     */
+    public void setCommitListener(Consumer<List<SqlParameter>> commitListener) {
+        this.commitListener = commitListener;
+    }
+
+    /**
+     * Each request is timed as BatchFlushLatency and its outcome counted in RowsWritten and
+     * RowsFailed.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void add(List<SqlParameter> parameterSet) {
+        int size = estimateSize(parameterSet);
+        if (!buffer.isEmpty() && bufferedBytes + size > maxBytes) {
+            flush();
+        }
+        if (buffer.isEmpty()) {
+            oldestBufferedAt = System.currentTimeMillis();
+        }
+        buffer.add(parameterSet);
+        bufferSizes.add(size);
+        bufferedBytes += size;
+
+        if (buffer.size() >= maxRows || System.currentTimeMillis() - oldestBufferedAt >= maxDelayMillis) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            while (!buffer.isEmpty()) {
+                int end = 0;
+                int bytes = 0;
+                while (end < buffer.size() && end < MAX_PARAMETER_SETS
+                        && (end == 0 || bytes + bufferSizes.get(end) <= MAX_REQUEST_BYTES)) {
+                    bytes += bufferSizes.get(end);
+                    end++;
+                }
+                long written = rowsWritten;
+                long failed = rowsFailed;
+                long requestStart = System.nanoTime();
+                try {
+                    execute(end);
+                } finally {
+                    metrics.time("BatchFlushLatency", System.nanoTime() - requestStart);
+                    metrics.count("RowsWritten", rowsWritten - written);
+                    metrics.count("RowsFailed", rowsFailed - failed);
+                }
+            }
+        } finally {
+            flushNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed;
+    }
+
+    /**
+     * Rows committed per second of time spent inside flushes.
+     */
+    public double rowsPerSecond() {
+        return flushNanos == 0 ? 0 : rowsWritten * 1_000_000_000d / flushNanos;
+    }
+
+    /**
+     * Writes the first {@code count} buffered parameter sets in one transaction and drops them
+     * from the buffer once it commits, bisecting on a rejected request.
+     */
+    private void execute(int count) {
+        List<List<SqlParameter>> parameterSets = buffer.subList(0, count);
+        String transactionId = rdsDataClient.beginTransaction(BeginTransactionRequest.builder()
+                .resourceArn(resourceArn)
+                .secretArn(secretArn)
+                .database(database)
+                .build()).transactionId();
+        try {
+            rdsDataClient.batchExecuteStatement(BatchExecuteStatementRequest.builder()
+                    .resourceArn(resourceArn)
+                    .secretArn(secretArn)
+                    .database(database)
+                    .transactionId(transactionId)
+                    .sql(sql)
+                    .parameterSets(parameterSets)
+                    .build());
+            rdsDataClient.commitTransaction(CommitTransactionRequest.builder()
+                    .resourceArn(resourceArn)
+                    .secretArn(secretArn)
+                    .transactionId(transactionId)
+                    .build());
+            rowsWritten += count;
+            List<List<SqlParameter>> committed = new ArrayList<>(parameterSets);
+            drop(count);
+            committed.forEach(commitListener);
+        } catch (BadRequestException | DatabaseErrorException e) {
+            rollback(transactionId);
+            if (count == 1) {
+                rowsFailed++;
+                System.out.println("Skipping row that failed to write: " + e.getMessage());
+                drop(1);
+                return;
+            }
+            // the first half leaves the buffer when it commits, so the second one is then in front
+            int middle = count / 2;
+            execute(middle);
+            execute(count - middle);
+        } catch (RuntimeException e) {
+            rollback(transactionId);
+            throw e;
+        }
+    }
+
+    private void drop(int count) {
+        List<Integer> sizes = bufferSizes.subList(0, count);
+        for (int size : sizes) {
+            bufferedBytes -= size;
+        }
+        sizes.clear();
+        buffer.subList(0, count).clear();
+    }
+
+    private void rollback(String transactionId) {
+        try {
+            rdsDataClient.rollbackTransaction(RollbackTransactionRequest.builder()
+                    .resourceArn(resourceArn)
+                    .secretArn(secretArn)
+                    .transactionId(transactionId)
+                    .build());
+        } catch (RuntimeException e) {
+            System.out.println("Rollback failed: " + e.getMessage());
+        }
+    }
+
+    private static int estimateSize(List<SqlParameter> parameterSet) {
+        int size = 0;
+        for (SqlParameter parameter : parameterSet) {
+            size += PARAMETER_OVERHEAD_BYTES + parameter.name().length();
+            String value = parameter.value().stringValue();
+            if (value != null) {
+                // worst case for JSON-escaped UTF-8
+                size += value.length() * 3;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,202 @@
+package example;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * BodyHandler that hands back the response body as a lazily decompressed InputStream. The body is
+ * inflated chunk by chunk as the caller reads it (gzip and deflate, matching the Accept-Encoding we
+ * send), with Inflaters and input buffers taken from {@link BufferPool}, so a page is never held
+ * in memory as a whole, neither compressed nor decompressed.
+ */
+public class DecompressingBodyHandler implements HttpResponse.BodyHandler<InputStream> {
+
+    @Override
+    public HttpResponse.BodySubscriber<InputStream> apply(HttpResponse.ResponseInfo responseInfo) {
+        String contentEncoding = contentEncoding(responseInfo.headers());
+        // decode() does not touch the stream, so the mapping function never blocks
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                inputStream -> decode(inputStream, contentEncoding));
+    }
+
+    public static String contentEncoding(HttpHeaders headers) {
+        return headers.firstValue("Content-Encoding").orElse("").trim();
+    }
+
+    public static InputStream decode(InputStream raw, String contentEncoding) {
+        if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)) {
+            return new InflatingInputStream(raw, true);
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflatingInputStream(raw, false);
+        }
+        return raw;
+    }
+
+    public static ReadableByteChannel asChannel(InputStream body) {
+        return Channels.newChannel(body);
+    }
+
+    /**
+     * Inflates a single gzip member or a zlib stream without any intermediate copies beyond the
+     * pooled input buffer. The gzip header is parsed on the first read and the trailer CRC and
+     * length are verified at the end.
+     */
+    private static final class InflatingInputStream extends InputStream {
+
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final InputStream in;
+        private final boolean gzip;
+        private final CRC32 crc = new CRC32();
+        private final byte[] single = new byte[1];
+        private Inflater inflater;
+        private byte[] buffer;
+        private int bufferLength;
+        private boolean headerRead;
+        private boolean finished;
+
+        InflatingInputStream(InputStream in, boolean gzip) {
+            this.in = in;
+            this.gzip = gzip;
+            this.headerRead = !gzip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (inflater == null) {
+                if (buffer != null || finished) {
+                    return -1;
+                }
+                inflater = BufferPool.acquireInflater(gzip);
+                buffer = BufferPool.acquireBuffer();
+            }
+            if (!headerRead) {
+                readGzipHeader();
+                headerRead = true;
+            }
+            if (finished || len == 0) {
+                return finished ? -1 : 0;
+            }
+            try {
+                while (true) {
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        if (gzip) {
+                            crc.update(b, off, n);
+                        }
+                        return n;
+                    }
+                    if (inflater.finished()) {
+                        if (gzip) {
+                            readGzipTrailer();
+                        }
+                        finished = true;
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Compressed body requires a preset dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        bufferLength = in.read(buffer, 0, buffer.length);
+                        if (bufferLength == -1) {
+                            throw new EOFException("Unexpected end of compressed body");
+                        }
+                        inflater.setInput(buffer, 0, bufferLength);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Malformed compressed body", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                if (inflater != null) {
+                    BufferPool.releaseInflater(inflater, gzip);
+                    BufferPool.releaseBuffer(buffer);
+                    inflater = null;
+                }
+                finished = true;
+            }
+        }
+
+        private void readGzipHeader() throws IOException {
+            if (readUShort(in) != 0x8b1f) {
+                throw new IOException("Not in gzip format");
+            }
+            if (readUByte(in) != 8) {
+                throw new IOException("Unsupported gzip compression method");
+            }
+            int flags = readUByte(in);
+            in.skipNBytes(6); // mtime, xfl, os
+            if ((flags & FEXTRA) != 0) {
+                in.skipNBytes(readUShort(in));
+            }
+            if ((flags & FNAME) != 0) {
+                while (readUByte(in) != 0) {
+                    // skip file name
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (readUByte(in) != 0) {
+                    // skip comment
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                in.skipNBytes(2);
+            }
+        }
+
+        private void readGzipTrailer() throws IOException {
+            // the trailer may already be partly in the input buffer, behind the end of the deflate data
+            int remaining = inflater.getRemaining();
+            byte[] trailer = new byte[8];
+            int fromBuffer = Math.min(remaining, trailer.length);
+            System.arraycopy(buffer, bufferLength - remaining, trailer, 0, fromBuffer);
+            if (fromBuffer < trailer.length) {
+                in.readNBytes(trailer, fromBuffer, trailer.length - fromBuffer);
+            }
+            long expectedCrc = littleEndianInt(trailer, 0);
+            long expectedSize = littleEndianInt(trailer, 4);
+            if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+                throw new IOException("Corrupt gzip trailer");
+            }
+        }
+
+        private static long littleEndianInt(byte[] b, int off) {
+            return (b[off] & 0xFFL) | (b[off + 1] & 0xFFL) << 8 | (b[off + 2] & 0xFFL) << 16 | (b[off + 3] & 0xFFL) << 24;
+        }
+
+        private static int readUShort(InputStream in) throws IOException {
+            return readUByte(in) | readUByte(in) << 8;
+        }
+
+        private static int readUByte(InputStream in) throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of gzip header");
+            }
+            return b;
+        }
+    }
+}
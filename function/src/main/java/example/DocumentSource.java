@@ -0,0 +1,45 @@
+package example;
+
+import gov.uspto.patent.bulk.DumpReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Sequence of raw patent documents (one XML or APS record per call) coming out of a bulk dump,
+ * whether it was staged to /tmp or is being streamed from S3.
+ */
+public interface DocumentSource extends Closeable {
+
+    /**
+     * @return the next raw document, or null once the source is exhausted
+     */
+    String next() throws IOException;
+
+    /**
+     * Like {@link #next()}, but the document may be materialized later by the returned supplier,
+     * possibly on another thread. Sources that can locate documents without decoding them
+     * override this; the default decodes eagerly.
+     *
+     * @return the next document, or null once the source is exhausted
+     */
+    default Supplier<String> nextDeferred() throws IOException {
+        String document = next();
+        return document == null ? null : () -> document;
+    }
+
+    static DocumentSource of(DumpReader dumpReader) {
+        return new DocumentSource() {
+            @Override
+            public String next() {
+                return dumpReader.hasNext() ? (String) dumpReader.next() : null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                dumpReader.close();
+            }
+        };
+    }
+}
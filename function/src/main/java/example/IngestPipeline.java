@@ -0,0 +1,236 @@
+package example;
+
+import gov.uspto.patent.PatentDocFormat;
+import gov.uspto.patent.PatentReader;
+import gov.uspto.patent.model.Patent;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Reads every document of a dump through three stages:
+ * <pre>
+ *   reader thread --(documents)--> N parser workers --(patents)--> writer (calling thread)
+ * </pre>
+ * Both hand-offs are bounded queues, so a slow writer backs up the parsers and a slow parser
+ * backs up the reader instead of buffering the whole archive in memory. The reader hands over
+ * {@link DocumentSource#nextDeferred() deferred} documents, so a source that only locates
+ * documents (like {@link MappedDocumentScanner}) has them decoded on the workers. Each worker owns its
+ * PatentReader. A document that fails to parse or write is counted and logged, and the rest
+ * of the file keeps going; only a failure to read the dump itself aborts the run.
+ */
+public class IngestPipeline {
+
+    /**
+     * Final stage of the pipeline. Only ever called from the thread running {@link #run}.
+     */
+    public interface PatentWriter {
+        void write(Patent patent) throws Exception;
+
+        default void flush() throws Exception {
+        }
+    }
+
+    public static class Result {
+        public final AtomicLong read = new AtomicLong();
+        public final AtomicLong skipped = new AtomicLong();
+        public final AtomicLong parsed = new AtomicLong();
+        public final AtomicLong parseFailed = new AtomicLong();
+        public final AtomicLong written = new AtomicLong();
+        public final AtomicLong writeFailed = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "read=" + read + " skipped=" + skipped + " parsed=" + parsed + " parseFailed=" + parseFailed
+                    + " written=" + written + " writeFailed=" + writeFailed;
+        }
+    }
+
+    private static final Supplier<String> END_OF_DOCUMENTS = () -> null;
+    private static final Parsed END_OF_PATENTS = new Parsed(null);
+
+    private record Parsed(Patent patent) {
+    }
+
+    private final PatentDocFormat patentDocFormat;
+    private final int workers;
+    private final int queueCapacity;
+    private Predicate<String> documentFilter = document -> true;
+    private Metrics metrics = Metrics.NOOP;
+
+    public IngestPipeline(PatentDocFormat patentDocFormat, int workers, int queueCapacity) {
+        if (workers <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("workers and queueCapacity must be positive");
+        }
+        this.patentDocFormat = patentDocFormat;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Worker count defaults to the number of available cores and can be pinned with INGEST_WORKERS;
+     * each queue holds INGEST_QUEUE_SIZE entries (default four per worker).
+     */
+    public static IngestPipeline fromEnvironment(PatentDocFormat patentDocFormat) {
+        int workers = ProcessS3AppPatentEventLambda.intEnv("INGEST_WORKERS", Runtime.getRuntime().availableProcessors());
+        int queueCapacity = ProcessS3AppPatentEventLambda.intEnv("INGEST_QUEUE_SIZE", workers * 4);
+        return new IngestPipeline(patentDocFormat, workers, queueCapacity);
+    }
+
+    /**
+     * Documents rejected by {@code documentFilter} are counted as skipped and never parsed. The
+     * filter runs on the parser workers and must be thread-safe.
+     */
+    public IngestPipeline withDocumentFilter(Predicate<String> documentFilter) {
+        this.documentFilter = documentFilter;
+        return this;
+    }
+
+    /**
+     * Parse latency is recorded per document as ParseLatency; document counts and
+     * DocumentsParsedPerSec are recorded when the run finishes.
+     */
+    public IngestPipeline withMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public Result run(DocumentSource documents, PatentWriter writer) throws Exception {
+        Result result = new Result();
+        long runStart = System.nanoTime();
+        BlockingQueue<Supplier<String>> documentQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Parsed> patentQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> readFailure = new AtomicReference<>();
+        AtomicInteger runningWorkers = new AtomicInteger(workers);
+        AtomicBoolean aborted = new AtomicBoolean();
+
+        Thread readerThread = new Thread(() -> {
+            try {
+                Supplier<String> document;
+                while ((document = documents.nextDeferred()) != null) {
+                    documentQueue.put(document);
+                    result.read.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                readFailure.set(e);
+            } finally {
+                for (int i = 0; i < workers; i++) {
+                    putMarker(documentQueue, END_OF_DOCUMENTS, aborted);
+                }
+            }
+        }, "ingest-reader");
+
+        List<Thread> workerThreads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            workerThreads.add(new Thread(() -> {
+                PatentReader patentReader = new PatentReader(patentDocFormat);
+                try {
+                    Supplier<String> deferred;
+                    while ((deferred = documentQueue.take()) != END_OF_DOCUMENTS) {
+                        // decoding and filtering can throw too; either way only this document is lost
+                        try {
+                            String document = deferred.get();
+                            if (!documentFilter.test(document)) {
+                                result.skipped.incrementAndGet();
+                                continue;
+                            }
+                            long parseStart = System.nanoTime();
+                            Patent patent;
+                            try (StringReader rawText = new StringReader(document)) {
+                                patent = patentReader.read(rawText);
+                            }
+                            metrics.time("ParseLatency", System.nanoTime() - parseStart);
+                            patentQueue.put(new Parsed(patent));
+                            result.parsed.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            result.parseFailed.incrementAndGet();
+                            System.out.println("Skipping document that failed to decode or parse: " + e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (runningWorkers.decrementAndGet() == 0) {
+                        putMarker(patentQueue, END_OF_PATENTS, aborted);
+                    }
+                }
+            }, "ingest-parser-" + i));
+        }
+
+        readerThread.start();
+        workerThreads.forEach(Thread::start);
+        try {
+            Parsed parsed;
+            while ((parsed = patentQueue.take()) != END_OF_PATENTS) {
+                try {
+                    writer.write(parsed.patent());
+                    result.written.incrementAndGet();
+                } catch (Exception e) {
+                    result.writeFailed.incrementAndGet();
+                    System.out.println("Skipping patent that failed to write: " + e.getMessage());
+                }
+            }
+            writer.flush();
+        } finally {
+            aborted.set(true);
+            readerThread.interrupt();
+            workerThreads.forEach(Thread::interrupt);
+            readerThread.join();
+            for (Thread workerThread : workerThreads) {
+                workerThread.join();
+            }
+            recordMetrics(result, System.nanoTime() - runStart);
+        }
+
+        if (readFailure.get() != null) {
+            throw readFailure.get();
+        }
+        return result;
+    }
+
+    private void recordMetrics(Result result, long elapsedNanos) {
+        metrics.count("DocumentsRead", result.read.get());
+        metrics.count("DocumentsSkipped", result.skipped.get());
+        metrics.count("DocumentsParsed", result.parsed.get());
+        metrics.count("ParseFailures", result.parseFailed.get());
+        metrics.count("WriteFailures", result.writeFailed.get());
+        metrics.rate("DocumentsParsedPerSec", result.parsed.get(), elapsedNanos, Metrics.Unit.COUNT_PER_SECOND);
+    }
+
+    /**
+     * End-of-stream markers must get through even if the thread was interrupted, but must not
+     * block forever once the consuming stage has gone away.
+     */
+    private static <T> void putMarker(BlockingQueue<T> queue, T marker, AtomicBoolean aborted) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (!aborted.get()) {
+                try {
+                    if (queue.offer(marker, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
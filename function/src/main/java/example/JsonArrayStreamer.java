@@ -0,0 +1,82 @@
+package example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Walks a JSON response with a streaming parser down to one nested array (for example
+ * {@code response.docs} or {@code results}) and hands its elements over one at a time. At most a
+ * single element is ever materialized, so memory stays flat no matter how many rows a page holds.
+ */
+public final class JsonArrayStreamer {
+
+    public interface ElementHandler {
+        void accept(JsonNode element) throws Exception;
+    }
+
+    /**
+     * Receives the parser positioned on an element's START_OBJECT and must consume the element
+     * up to and including its END_OBJECT.
+     */
+    public interface RecordHandler {
+        void accept(JsonParser parser) throws Exception;
+    }
+
+    private JsonArrayStreamer() {
+    }
+
+    /**
+     * @param path field names leading from the root object to the array
+     * @return number of elements handed to {@code handler}; 0 if the array is missing or empty
+     */
+    public static long forEach(ObjectMapper mapper, InputStream in, ElementHandler handler, String... path) throws Exception {
+        return forEachRecord(mapper, in, parser -> handler.accept(parser.readValueAsTree()), path);
+    }
+
+    /**
+     * Like {@link #forEach} but hands over the parser itself, so the handler can bind the element
+     * straight from its tokens without materializing it.
+     */
+    public static long forEachRecord(ObjectMapper mapper, InputStream in, RecordHandler handler, String... path) throws Exception {
+        try (JsonParser parser = mapper.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !seek(parser, path, 0)) {
+                return 0;
+            }
+            long count = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    handler.accept(parser);
+                    count++;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Leaves the parser on the START_ARRAY token of the array at {@code path}, starting from the
+     * START_OBJECT the parser is currently on.
+     */
+    private static boolean seek(JsonParser parser, String[] path, int depth) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals(path[depth])) {
+                if (depth == path.length - 1) {
+                    return value == JsonToken.START_ARRAY;
+                }
+                return value == JsonToken.START_OBJECT && seek(parser, path, depth + 1);
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Set of primitive longs with open addressing and linear probing: one long[] slot per entry and no
+ * boxing, so a few million application ids fit in tens of MB. 0 marks an empty slot and is tracked
+ * separately. Not thread-safe.
+ */
+public class LongOpenHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean containsZero;
+
+    public LongOpenHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsZero;
+            containsZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+        int index = mix(value) & mask;
+        while (slots[index] != EMPTY) {
+            if (slots[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        if (++size >= resizeAt) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int index = mix(value) & mask;
+        long slot;
+        while ((slot = slots[index]) != EMPTY) {
+            if (slot == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        if (containsZero) {
+            out.writeLong(EMPTY);
+        }
+        for (long slot : slots) {
+            if (slot != EMPTY) {
+                out.writeLong(slot);
+            }
+        }
+    }
+
+    public static LongOpenHashSet readFrom(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        LongOpenHashSet set = new LongOpenHashSet(count);
+        for (int i = 0; i < count; i++) {
+            set.add(in.readLong());
+        }
+        return set;
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+        allocate(capacity);
+        for (long value : old) {
+            if (value != EMPTY) {
+                int index = mix(value) & mask;
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Finalizer of MurmurHash3; sequential application numbers would otherwise cluster badly.
+     */
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+    @Override
+    public String toString() {
+        return "LongOpenHashSet{size=" + size + ", capacity=" + slots.length + "}";
+    }
+}
@@ -0,0 +1,153 @@
+package example;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded in-process cache for read lookups, kept across warm invocations.
+ * <p>
+ * Entries expire {@code ttlMillis} after they were loaded and the least recently used ones are
+ * dropped beyond {@code maxEntries}. Keys nothing was found for are cached too, so repeated
+ * lookups of an unknown key do not reach the database either. Misses are coalesced: a key that
+ * is already being loaded by another thread is waited for instead of loaded again, and all keys
+ * missing from one {@link #getAll} call are handed to the loader together.
+ */
+public class LookupCache<K, V> {
+
+    /**
+     * Loads several keys at once; keys without a value are left out of the result.
+     */
+    public interface Loader<K, V> {
+        Map<K, V> load(Set<K> keys) throws Exception;
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private Metrics metrics = Metrics.NOOP;
+
+    public LookupCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.entries = new LinkedHashMap<>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LookupCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Cached values are counted as LookupCacheHits, loaded ones as LookupCacheMisses and ones
+     * another caller was already loading as LookupCoalesced.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public V get(K key, Loader<K, V> loader) throws Exception {
+        return getAll(Set.of(key), loader).get(key);
+    }
+
+    /**
+     * @return every distinct key, mapped to its value or to null if there is none
+     */
+    public Map<K, V> getAll(Collection<K> keys, Loader<K, V> loader) throws Exception {
+        Map<K, V> result = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> claimed = new LinkedHashMap<>();
+        int hits = 0;
+        int coalesced = 0;
+        for (K key : keys) {
+            if (result.containsKey(key) || pending.containsKey(key)) {
+                continue;
+            }
+            Entry<V> cached = lookup(key);
+            if (cached != null) {
+                hits++;
+                result.put(key, cached.value());
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> other = loading.putIfAbsent(key, future);
+            if (other != null) {
+                coalesced++;
+                pending.put(key, other);
+                continue;
+            }
+            // another caller may have finished loading it between the lookup and the claim
+            cached = lookup(key);
+            if (cached != null) {
+                loading.remove(key, future);
+                future.complete(cached.value());
+                hits++;
+                result.put(key, cached.value());
+                continue;
+            }
+            claimed.put(key, future);
+            pending.put(key, future);
+        }
+        metrics.count("LookupCacheHits", hits);
+        metrics.count("LookupCacheMisses", claimed.size());
+        metrics.count("LookupCoalesced", coalesced);
+
+        if (!claimed.isEmpty()) {
+            load(claimed, loader);
+        }
+        for (Map.Entry<K, CompletableFuture<V>> entry : pending.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        return result;
+    }
+
+    private void load(Map<K, CompletableFuture<V>> claimed, Loader<K, V> loader) throws Exception {
+        try {
+            Map<K, V> loaded = loader.load(claimed.keySet());
+            long expiresAt = System.nanoTime() + ttlNanos;
+            synchronized (this) {
+                for (K key : claimed.keySet()) {
+                    entries.put(key, new Entry<>(loaded.get(key), expiresAt));
+                }
+            }
+            for (Map.Entry<K, CompletableFuture<V>> entry : claimed.entrySet()) {
+                entry.getValue().complete(loaded.get(entry.getKey()));
+            }
+        } catch (Exception e) {
+            for (CompletableFuture<V> future : claimed.values()) {
+                future.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            // only after the values are cached, so a new caller finds one or the other
+            for (Map.Entry<K, CompletableFuture<V>> entry : claimed.entrySet()) {
+                loading.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private synchronized Entry<V> lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt() - System.nanoTime() <= 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,183 @@
+package example;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.StringWriter;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read side for downstream services: looks up applications by number together with their office
+ * action rejections and the PTAB proceedings they are party to.
+ * <p>
+ * Input is {@code {"applicationNumber": "..."}} or {@code {"applicationNumbers": [...]}}; the
+ * result is a JSON object from each number to {@code {"application": ..., "rejections": [...],
+ * "proceedings": [...]}}, or to null when none of the tables know it. Results are served from a
+ * {@link LookupCache} kept for the life of the container, and all numbers missing from it are
+ * fetched in a single query.
+ * <p>
+ * Applications are matched on applications.applicationNumber, which rejections and proceedings
+ * also use; applicationId there is the publication number. Rows ingested before that column was
+ * added (db/002_applications_application_number.sql) have no application number and are not found
+ * until their archive is ingested again.
+ */
+public class LookupLambda implements RequestHandler<Object, String> {
+
+    /**
+     * One row per requested number, in which each table contributes a JSON column.
+     */
+    static final String LOOKUP_SQL = "SELECT k.applicationNumber, json_build_object("
+            + "'application', (SELECT row_to_json(a) FROM applications a WHERE a.applicationNumber = k.applicationNumber LIMIT 1), "
+            + "'rejections', COALESCE((SELECT json_agg(r ORDER BY r.submissionDate) FROM rejections r "
+            + "WHERE r.patentApplicationNumber = k.applicationNumber), '[]'::json), "
+            + "'proceedings', COALESCE((SELECT json_agg(p ORDER BY p.proceedingFilingDate) FROM proceeding p "
+            + "WHERE p.respondentApplicationNumberText = k.applicationNumber "
+            + "OR p.appellantApplicationNumberText = k.applicationNumber), '[]'::json))::text, "
+            + "EXISTS (SELECT 1 FROM applications a WHERE a.applicationNumber = k.applicationNumber) "
+            + "OR EXISTS (SELECT 1 FROM rejections r WHERE r.patentApplicationNumber = k.applicationNumber) "
+            + "OR EXISTS (SELECT 1 FROM proceeding p WHERE p.respondentApplicationNumberText = k.applicationNumber "
+            + "OR p.appellantApplicationNumberText = k.applicationNumber) "
+            + "FROM unnest(?::text[]) AS k(applicationNumber)";
+
+    private static LookupCache<String, String> cache;
+    private static String[] credentials;
+
+    private final Metrics metrics = Metrics.forHandler("LookupLambda");
+
+    @Override
+    public String handleRequest(Object input, Context context) {
+        long start = System.nanoTime();
+        LookupCache<String, String> lookups = cache();
+        lookups.setMetrics(metrics);
+        try {
+            List<String> applicationNumbers = applicationNumbers(input);
+            String[] db = credentials();
+            Map<String, String> found = lookups.getAll(applicationNumbers, missing -> query(Resources.jdbcConnection(db[0], db[1], db[2]), missing));
+            metrics.gauge("LookupCacheSize", lookups.size(), Metrics.Unit.COUNT);
+            return toJson(found);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            metrics.time("LookupLatency", System.nanoTime() - start);
+            metrics.flush();
+        }
+    }
+
+    /**
+     * LOOKUP_MAX_KEYS (default 500) bounds how many numbers one request may ask for.
+     */
+    static List<String> applicationNumbers(Object input) {
+        List<String> numbers = new ArrayList<>();
+        if (input instanceof Map<?, ?> options) {
+            if (options.get("applicationNumber") != null) {
+                numbers.add(options.get("applicationNumber").toString().trim());
+            }
+            if (options.get("applicationNumbers") instanceof List<?> list) {
+                for (Object number : list) {
+                    if (number != null) {
+                        numbers.add(number.toString().trim());
+                    }
+                }
+            }
+        }
+        if (numbers.isEmpty()) {
+            throw new IllegalArgumentException("expected applicationNumber or applicationNumbers");
+        }
+        int maxKeys = ProcessS3AppPatentEventLambda.intEnv("LOOKUP_MAX_KEYS", 500);
+        if (numbers.size() > maxKeys) {
+            throw new IllegalArgumentException("at most " + maxKeys + " application numbers per request");
+        }
+        return numbers;
+    }
+
+    private Map<String, String> query(Connection con, Set<String> applicationNumbers) throws Exception {
+        long start = System.nanoTime();
+        Map<String, String> found = new HashMap<>();
+        Array keys = con.createArrayOf("text", applicationNumbers.toArray());
+        try (PreparedStatement statement = con.prepareStatement(LOOKUP_SQL)) {
+            statement.setArray(1, keys);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    if (rows.getBoolean(3)) {
+                        found.put(rows.getString(1), rows.getString(2));
+                    }
+                }
+            }
+        } finally {
+            keys.free();
+        }
+        metrics.time("LookupQueryLatency", System.nanoTime() - start);
+        metrics.count("LookupQueryKeys", applicationNumbers.size());
+        return found;
+    }
+
+    private static String toJson(Map<String, String> found) throws Exception {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = Resources.objectMapper().getFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            for (Map.Entry<String, String> entry : found.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                if (entry.getValue() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeRawValue(entry.getValue());
+                }
+            }
+            generator.writeEndObject();
+        }
+        return json.toString();
+    }
+
+    /**
+     * The JDBC URL comes from LOOKUP_DB_URL. User and password come from the Secrets Manager
+     * secret LOOKUP_DB_SECRET_ARN (username and password, as RDS stores them) or else from
+     * LOOKUP_DB_USER and LOOKUP_DB_PASSWORD. Read once per container.
+     *
+     * @return url, user and password
+     */
+    private static synchronized String[] credentials() throws Exception {
+        if (credentials == null) {
+            String url = requiredEnv("LOOKUP_DB_URL");
+            String secretArn = System.getenv("LOOKUP_DB_SECRET_ARN");
+            if (secretArn != null && !secretArn.isBlank()) {
+                JsonNode secret = Resources.secretJson(secretArn);
+                credentials = new String[]{url, secret.path("username").asText(), secret.path("password").asText()};
+            } else {
+                credentials = new String[]{url, requiredEnv("LOOKUP_DB_USER"), requiredEnv("LOOKUP_DB_PASSWORD")};
+            }
+        }
+        return credentials;
+    }
+
+    private static String requiredEnv(String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalStateException(name + " is not set");
+        }
+        return value;
+    }
+
+    /**
+     * LOOKUP_CACHE_MAX_ENTRIES (default 10000) results are kept for LOOKUP_CACHE_TTL_SECONDS
+     * (default 300).
+     */
+    private static synchronized LookupCache<String, String> cache() {
+        if (cache == null) {
+            cache = new LookupCache<>(ProcessS3AppPatentEventLambda.intEnv("LOOKUP_CACHE_MAX_ENTRIES", 10_000),
+                    ProcessS3AppPatentEventLambda.intEnv("LOOKUP_CACHE_TTL_SECONDS", 300) * 1000L);
+        }
+        return cache;
+    }
+}
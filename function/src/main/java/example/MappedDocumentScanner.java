@@ -0,0 +1,176 @@
+package example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds the documents of an extracted XML dump by memory-mapping the file and scanning it for
+ * {@code <?xml} at the start of a line, the same boundary XmlDocumentStream and DumpFileXml use.
+ * Documents come back as (offset, length) {@link Slice}s; the scan only touches each byte once, eight
+ * at a time, and decoding a slice into a String is left to whoever consumes it, so parser
+ * workers can decode disjoint regions of the file in parallel.
+ * <p>
+ * Files larger than one mapping are mapped as consecutive 1 GiB regions; a document may cross
+ * regions. Only {@link #nextSlice()} / {@link #next()} / {@link #nextDeferred()} must be called
+ * from a single thread; {@link #decode} is thread-safe.
+ */
+public class MappedDocumentScanner implements DocumentSource {
+
+    public record Slice(long offset, int length) {
+    }
+
+    private static final long REGION_SIZE = 1L << 30;
+    /** Each region maps this many bytes past its end so word reads and pattern checks never split. */
+    private static final int REGION_OVERLAP = 64;
+
+    private static final byte[] XML_DECLARATION = "<?xml".getBytes(StandardCharsets.US_ASCII);
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long PATTERN = LOW_BITS * '<';
+
+    private final MappedByteBuffer[] regions;
+    private final long size;
+    private long nextStart = -2;
+
+    public MappedDocumentScanner(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            int count = (int) ((size + REGION_SIZE - 1) / REGION_SIZE);
+            regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * REGION_SIZE;
+                long length = Math.min(REGION_SIZE + REGION_OVERLAP, size - start);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                regions[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        // the mappings stay valid after the channel is closed
+    }
+
+    /**
+     * Writes every .xml entry of a zip archive, one after the other, into {@code target}.
+     */
+    public static Path extractXml(Path zip, Path target) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip), StandardCharsets.UTF_8);
+             OutputStream out = Files.newOutputStream(target)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".xml")) {
+                    in.transferTo(out);
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * @return the next document, or null at the end of the file
+     */
+    public Slice nextSlice() {
+        if (nextStart == -2) {
+            nextStart = find(0);
+        }
+        if (nextStart < 0) {
+            return null;
+        }
+        long start = nextStart;
+        long end = find(start + 1);
+        nextStart = end < 0 ? -1 : end;
+        long length = (end < 0 ? size : end) - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Document at " + start + " is larger than 2 GiB");
+        }
+        return new Slice(start, (int) length);
+    }
+
+    @Override
+    public String next() {
+        Slice slice = nextSlice();
+        return slice == null ? null : decode(slice);
+    }
+
+    @Override
+    public Supplier<String> nextDeferred() {
+        Slice slice = nextSlice();
+        return slice == null ? null : () -> decode(slice);
+    }
+
+    public String decode(Slice slice) {
+        byte[] bytes = new byte[slice.length()];
+        long position = slice.offset();
+        int copied = 0;
+        while (copied < bytes.length) {
+            int region = (int) (position / REGION_SIZE);
+            int offset = (int) (position % REGION_SIZE);
+            int chunk = (int) Math.min(bytes.length - copied, REGION_SIZE - offset);
+            // absolute bulk get: no shared position, so concurrent decodes don't interfere
+            regions[region].get(offset, bytes, copied, chunk);
+            copied += chunk;
+            position += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        // mapped regions are released by the garbage collector
+    }
+
+    /**
+     * @return offset of the first document boundary at or after {@code from}, or -1
+     */
+    private long find(long from) {
+        for (int region = (int) (from / REGION_SIZE); region < regions.length; region++) {
+            long regionStart = region * REGION_SIZE;
+            MappedByteBuffer buffer = regions[region];
+            int limit = (int) Math.min(REGION_SIZE, size - regionStart);
+            int i = (int) Math.max(0, from - regionStart);
+
+            // eight bytes per step: flag every '<' with the zero-byte trick, then verify candidates
+            while (i + Long.BYTES <= buffer.limit() && i < limit) {
+                long word = buffer.getLong(i) ^ PATTERN;
+                long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+                while (found != 0) {
+                    int candidate = i + (Long.numberOfTrailingZeros(found) >>> 3);
+                    if (candidate < limit && isBoundary(regionStart + candidate)) {
+                        return regionStart + candidate;
+                    }
+                    found &= found - 1;
+                }
+                i += Long.BYTES;
+            }
+            for (; i < limit; i++) {
+                if (buffer.get(i) == '<' && isBoundary(regionStart + i)) {
+                    return regionStart + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean isBoundary(long position) {
+        if (position + XML_DECLARATION.length > size) {
+            return false;
+        }
+        for (int k = 0; k < XML_DECLARATION.length; k++) {
+            if (byteAt(position + k) != XML_DECLARATION[k]) {
+                return false;
+            }
+        }
+        return position == 0 || byteAt(position - 1) == '\n';
+    }
+
+    private byte byteAt(long position) {
+        return regions[(int) (position / REGION_SIZE)].get((int) (position % REGION_SIZE));
+    }
+}
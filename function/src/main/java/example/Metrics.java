@@ -0,0 +1,240 @@
+package example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage counters, timers and gauges for one handler, written to stdout as CloudWatch Embedded
+ * Metric Format so the Lambda log stream turns them into metrics without any API calls.
+ * <p>
+ * Counters are summed, gauges keep their last value and timers go into a log-bucketed histogram
+ * from which {@code <name>P50}, {@code <name>P99}, {@code <name>Max} and {@code <name>Count} are
+ * emitted. {@link #flush()} writes everything recorded since the previous flush and resets; call
+ * it once at the end of every invocation. All recording methods are thread-safe.
+ */
+public class Metrics {
+
+    public enum Unit {
+        COUNT("Count"), MILLISECONDS("Milliseconds"), BYTES("Bytes"), BYTES_PER_SECOND("Bytes/Second"),
+        COUNT_PER_SECOND("Count/Second"), NONE("None");
+
+        private final String emfName;
+
+        Unit(String emfName) {
+            this.emfName = emfName;
+        }
+    }
+
+    /** CloudWatch accepts at most 100 metric definitions per EMF directive. */
+    private static final int MAX_METRICS_PER_DOCUMENT = 100;
+
+    private record Gauge(double value, Unit unit) {
+    }
+
+    private record Value(double value, Unit unit) {
+    }
+
+    /**
+     * Discards everything; the default of components that are not given metrics of their own.
+     */
+    public static final Metrics NOOP = new Metrics("unused", Map.of()) {
+        @Override
+        public void count(String name, long delta) {
+        }
+
+        @Override
+        public void time(String name, long nanos) {
+        }
+
+        @Override
+        public void gauge(String name, double value, Unit unit) {
+        }
+    };
+
+    private final String namespace;
+    private final Map<String, String> dimensions;
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    public Metrics(String namespace, Map<String, String> dimensions) {
+        this.namespace = namespace;
+        this.dimensions = new LinkedHashMap<>(dimensions);
+    }
+
+    /**
+     * Metrics in the METRICS_NAMESPACE namespace (default PatentIngest) with a single Function
+     * dimension.
+     */
+    public static Metrics forHandler(String function) {
+        String namespace = System.getenv("METRICS_NAMESPACE");
+        return new Metrics(namespace == null ? "PatentIngest" : namespace, Map.of("Function", function));
+    }
+
+    public void count(String name, long delta) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+
+    public void time(String name, long nanos) {
+        timers.computeIfAbsent(name, n -> new Histogram()).record(nanos / 1000);
+    }
+
+    public void gauge(String name, double value, Unit unit) {
+        gauges.put(name, new Gauge(value, unit));
+    }
+
+    /**
+     * Records {@code amount / elapsed seconds} as a gauge, ignoring intervals too short to measure.
+     */
+    public void rate(String name, long amount, long elapsedNanos, Unit unit) {
+        if (elapsedNanos > 0) {
+            gauge(name, amount * 1_000_000_000d / elapsedNanos, unit);
+        }
+    }
+
+    public void flush() {
+        flush(System.out);
+    }
+
+    public synchronized void flush(PrintStream out) {
+        for (String document : toEmf(System.currentTimeMillis())) {
+            out.println(document);
+        }
+        counters.clear();
+        timers.clear();
+        gauges.clear();
+    }
+
+    /**
+     * @return one EMF document per (up to) 100 metrics; empty if nothing was recorded
+     */
+    public List<String> toEmf(long timestamp) {
+        Map<String, Value> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, new Value(counter.sum(), Unit.COUNT)));
+        gauges.forEach((name, gauge) -> values.put(name, new Value(gauge.value(), gauge.unit())));
+        timers.forEach((name, histogram) -> {
+            synchronized (histogram) {
+                values.put(name + "P50", new Value(histogram.percentile(0.50) / 1000d, Unit.MILLISECONDS));
+                values.put(name + "P99", new Value(histogram.percentile(0.99) / 1000d, Unit.MILLISECONDS));
+                values.put(name + "Max", new Value(histogram.max / 1000d, Unit.MILLISECONDS));
+                values.put(name + "Count", new Value(histogram.count, Unit.COUNT));
+            }
+        });
+
+        List<String> documents = new ArrayList<>();
+        List<Map.Entry<String, Value>> entries = new ArrayList<>(values.entrySet());
+        for (int from = 0; from < entries.size(); from += MAX_METRICS_PER_DOCUMENT) {
+            documents.add(document(timestamp, entries.subList(from, Math.min(from + MAX_METRICS_PER_DOCUMENT, entries.size()))));
+        }
+        return documents;
+    }
+
+    private String document(long timestamp, List<Map.Entry<String, Value>> entries) {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = Resources.objectMapper().getFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("_aws");
+            generator.writeNumberField("Timestamp", timestamp);
+            generator.writeArrayFieldStart("CloudWatchMetrics");
+            generator.writeStartObject();
+            generator.writeStringField("Namespace", namespace);
+            generator.writeArrayFieldStart("Dimensions");
+            generator.writeStartArray();
+            for (String dimension : dimensions.keySet()) {
+                generator.writeString(dimension);
+            }
+            generator.writeEndArray();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("Metrics");
+            for (Map.Entry<String, Value> entry : entries) {
+                generator.writeStartObject();
+                generator.writeStringField("Name", entry.getKey());
+                generator.writeStringField("Unit", entry.getValue().unit().emfName);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                generator.writeStringField(dimension.getKey(), dimension.getValue());
+            }
+            for (Map.Entry<String, Value> entry : entries) {
+                generator.writeNumberField(entry.getKey(), entry.getValue().value());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Histogram of non-negative microsecond values in buckets of 1/16 of a power of two, so any
+     * percentile is accurate to within about 6% using a fixed 8 KiB of counts.
+     */
+    static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+        private long count;
+        private long max;
+
+        synchronized void record(long value) {
+            value = Math.max(0, value);
+            counts[index(value)]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the {@code quantile} value, capped at the max
+         */
+        synchronized long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return (shift + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long subBucket = index % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        }
+    }
+}
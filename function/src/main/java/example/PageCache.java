@@ -0,0 +1,318 @@
+package example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+/**
+ * Local cache of API pages, so a replayed run or a reload after a schema change reads pages from
+ * disk instead of downloading them again.
+ * <p>
+ * A page is stored under the SHA-256 of its request (method, URL and form body, which carry the
+ * endpoint, criteria, start and rows), holding the still-compressed body together with its
+ * Content-Encoding, ETag and Last-Modified. A cached page younger than {@code maxAgeMillis} is
+ * served without a request. An older one is revalidated with If-None-Match / If-Modified-Since,
+ * and a 304 serves it from disk. Entries are evicted least recently used first once they add up
+ * to more than {@code maxBytes}; the file modification time records use, so the order survives
+ * cold starts.
+ * <p>
+ * A cached page is held in memory whole, so while the cache is on {@link #open} no longer streams
+ * bodies as they arrive. It is therefore off unless PAGE_CACHE_MAX_MB is set.
+ */
+public class PageCache {
+
+    /**
+     * A page body as received, still in its Content-Encoding.
+     */
+    public record Page(byte[] body, String contentEncoding, boolean fromCache) {
+
+        public InputStream open() {
+            return DecompressingBodyHandler.decode(new ByteArrayInputStream(body), contentEncoding);
+        }
+    }
+
+    /**
+     * A decompressed page body, and whether it was served from the cache.
+     */
+    public record OpenedPage(InputStream body, boolean fromCache) {
+    }
+
+    private record Entry(long storedAt, String etag, String lastModified, String contentEncoding, byte[] body) {
+    }
+
+    private static final int MAGIC = 0x50414745; // "PAGE"
+    private static final String SUFFIX = ".page";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    /** File name to size, least recently used first. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private Metrics metrics = Metrics.NOOP;
+
+    public PageCache(Path directory, long maxBytes, long maxAgeMillis) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        if (maxBytes > 0) {
+            Files.createDirectories(directory);
+            loadIndex();
+        }
+    }
+
+    /**
+     * PAGE_CACHE_MAX_MB (default 0, the cache is off) under PAGE_CACHE_DIR (default
+     * /tmp/page-cache); PAGE_CACHE_MAX_AGE_SECONDS (default 0) lets recent pages skip revalidation.
+     */
+    public static PageCache fromEnvironment() throws IOException {
+        String dir = System.getenv("PAGE_CACHE_DIR");
+        return new PageCache(Paths.get(dir == null || dir.isBlank() ? "/tmp/page-cache" : dir),
+                ProcessS3AppPatentEventLambda.intEnv("PAGE_CACHE_MAX_MB", 0) * 1024L * 1024L,
+                ProcessS3AppPatentEventLambda.intEnv("PAGE_CACHE_MAX_AGE_SECONDS", 0) * 1000L);
+    }
+
+    /**
+     * Hits (fresh or revalidated) are counted as PageCacheHits, downloads as PageCacheMisses.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Name to time a downloaded {@link #open} under: ApiPageHeadersLatency while bodies are
+     * streamed, since open returns at the response headers, or ApiPageFetchLatency, the name
+     * {@link #fetch} callers use for a whole body, once the cache reads the body first.
+     */
+    public String openLatencyMetric() {
+        return isEnabled() ? "ApiPageFetchLatency" : "ApiPageHeadersLatency";
+    }
+
+    /**
+     * Opens the decompressed body of the page for {@code request}: from the cache when it is
+     * enabled, otherwise streamed straight from the API.
+     */
+    public OpenedPage open(ApiClient client, HttpRequest request) throws IOException, InterruptedException {
+        if (!isEnabled()) {
+            return new OpenedPage(client.send(request, new DecompressingBodyHandler()).body(), false);
+        }
+        Page page = fetch(client, request);
+        return new OpenedPage(page.open(), page.fromCache());
+    }
+
+    public Page fetch(ApiClient client, HttpRequest request) throws IOException, InterruptedException {
+        if (!isEnabled()) {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            return new Page(response.body(), DecompressingBodyHandler.contentEncoding(response.headers()), false);
+        }
+        String name = key(request) + SUFFIX;
+        Entry cached = read(name);
+        if (cached != null && System.currentTimeMillis() - cached.storedAt() < maxAgeMillis) {
+            metrics.count("PageCacheHits", 1);
+            touch(name);
+            return new Page(cached.body(), cached.contentEncoding(), true);
+        }
+
+        HttpRequest conditional = request;
+        if (cached != null && (!cached.etag().isEmpty() || !cached.lastModified().isEmpty())) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request, (header, value) -> true);
+            if (!cached.etag().isEmpty()) {
+                builder.header("If-None-Match", cached.etag());
+            }
+            if (!cached.lastModified().isEmpty()) {
+                builder.header("If-Modified-Since", cached.lastModified());
+            }
+            conditional = builder.build();
+        }
+        HttpResponse<byte[]> response = client.send(conditional, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 304 && cached != null) {
+            metrics.count("PageCacheHits", 1);
+            touch(name);
+            return new Page(cached.body(), cached.contentEncoding(), true);
+        }
+
+        metrics.count("PageCacheMisses", 1);
+        Entry entry = new Entry(System.currentTimeMillis(),
+                response.headers().firstValue("ETag").orElse(""),
+                response.headers().firstValue("Last-Modified").orElse(""),
+                DecompressingBodyHandler.contentEncoding(response.headers()),
+                response.body());
+        try {
+            write(name, entry);
+        } catch (IOException e) {
+            // the page is still good, it just won't be cached
+            System.out.println("Could not cache page " + name + ": " + e.getMessage());
+        }
+        return new Page(entry.body(), entry.contentEncoding(), false);
+    }
+
+    /**
+     * SHA-256 over the method, URL and body of the request.
+     */
+    static String key(HttpRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((request.method() + " " + request.uri() + "\n").getBytes(StandardCharsets.UTF_8));
+            request.bodyPublisher().ifPresent(publisher -> publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    digest.update(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            }));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Entry read(String name) {
+        Path file = directory.resolve(name);
+        synchronized (this) {
+            if (!entries.containsKey(name)) {
+                return null;
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a cached page");
+            }
+            long storedAt = in.readLong();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            String contentEncoding = in.readUTF();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(storedAt, etag, lastModified, contentEncoding, body);
+        } catch (IOException e) {
+            System.out.println("Dropping unreadable cached page " + name + ": " + e.getMessage());
+            remove(name);
+            return null;
+        }
+    }
+
+    private void write(String name, Entry entry) throws IOException {
+        Path tmp = Files.createTempFile(directory, name, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(entry.storedAt());
+            out.writeUTF(entry.etag());
+            out.writeUTF(entry.lastModified());
+            out.writeUTF(entry.contentEncoding());
+            out.writeInt(entry.body().length);
+            out.write(entry.body());
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        long size = Files.size(tmp);
+        Files.move(tmp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            Long previous = entries.put(name, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+        }
+        evict();
+    }
+
+    private void touch(String name) {
+        synchronized (this) {
+            entries.get(name);
+        }
+        try {
+            Files.setLastModifiedTime(directory.resolve(name), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only the eviction order after a cold start suffers
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            Long size = entries.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            System.out.println("Could not delete cached page " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void evict() {
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                totalBytes -= eldest.getValue();
+                victims.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (String victim : victims) {
+            try {
+                Files.deleteIfExists(directory.resolve(victim));
+            } catch (IOException e) {
+                System.out.println("Could not evict cached page " + victim + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        record Cached(String name, long size, long usedAt) {
+        }
+        List<Cached> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                found.add(new Cached(file.getFileName().toString(), Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            }
+        }
+        found.sort(Comparator.comparingLong(Cached::usedAt));
+        for (Cached cached : found) {
+            entries.put(cached.name(), cached.size());
+            totalBytes += cached.size();
+        }
+        evict();
+    }
+}
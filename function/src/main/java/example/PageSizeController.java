@@ -0,0 +1,99 @@
+package example;
+
+/**
+ * Picks the page size for the USPTO API fetchers, AIMD style: every page that comes back full,
+ * within the latency target and under the byte budget grows the size by a fixed step; a slow or
+ * oversized page shrinks it by a quarter and a failed page halves it. The size always stays
+ * within [min, max]. Every change is recorded as the ApiPageSize gauge.
+ * <p>
+ * A page that comes back non-empty but short of what was asked for is taken as the API's own
+ * limit and lowers max to it, so a bound set too high cannot make the fetchers skip records.
+ * Thread-safe, so concurrent fetchers can share one controller.
+ */
+public class PageSizeController {
+
+    /** Consecutive failed pages tolerated before {@link #onError()} gives up. */
+    static final int MAX_CONSECUTIVE_ERRORS = 3;
+
+    private final int min;
+    private int max;
+    private final int step;
+    private final long targetLatencyNanos;
+    private final long maxPageBytes;
+    private final Metrics metrics;
+
+    private int size;
+    private int consecutiveErrors;
+
+    public PageSizeController(int initial, int min, int max, long targetLatencyMillis, long maxPageBytes, Metrics metrics) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("page size bounds must satisfy 0 < min <= max");
+        }
+        this.min = min;
+        this.max = max;
+        this.step = Math.max(1, initial / 10);
+        this.targetLatencyNanos = targetLatencyMillis * 1_000_000L;
+        this.maxPageBytes = maxPageBytes;
+        this.metrics = metrics;
+        this.size = Math.max(min, Math.min(max, initial));
+        metrics.gauge("ApiPageSize", size, Metrics.Unit.COUNT);
+    }
+
+    /**
+     * Starts at {@code initial} (the TotalQuantity setting). PAGE_SIZE_MIN defaults to a tenth of
+     * it and PAGE_SIZE_MAX to it, so the size only grows where PAGE_SIZE_MAX is raised to what the
+     * API is known to serve per page. PAGE_TARGET_LATENCY_MS (default 5000) and PAGE_MAX_BYTES (default 32 MiB) bound a
+     * single page.
+     */
+    public static PageSizeController fromEnvironment(int initial, Metrics metrics) {
+        int min = ProcessS3AppPatentEventLambda.intEnv("PAGE_SIZE_MIN", Math.max(1, initial / 10));
+        int max = ProcessS3AppPatentEventLambda.intEnv("PAGE_SIZE_MAX", Math.max(min, initial));
+        return new PageSizeController(initial, min, max,
+                ProcessS3AppPatentEventLambda.intEnv("PAGE_TARGET_LATENCY_MS", 5000),
+                ProcessS3AppPatentEventLambda.intEnv("PAGE_MAX_BYTES", 32 * 1024 * 1024), metrics);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param requested page size the request asked for
+     * @param records   records the page held
+     * @param latencyNanos time the page took
+     * @param bytes     bytes read for the page
+     */
+    public synchronized void onSuccess(int requested, long records, long latencyNanos, long bytes) {
+        consecutiveErrors = 0;
+        if (records > 0 && records < requested) {
+            max = Math.max(min, (int) Math.min(max, records));
+            resize(size);
+            return;
+        }
+        if (latencyNanos > targetLatencyNanos || bytes > maxPageBytes) {
+            resize(size - Math.max(1, size / 4));
+        } else if (records >= requested && requested >= size) {
+            resize(size + step);
+        }
+    }
+
+    /**
+     * Halves the size after a failed page.
+     *
+     * @return whether the page should be retried, which is no longer the case after
+     * {@link #MAX_CONSECUTIVE_ERRORS} failures in a row
+     */
+    public synchronized boolean onError() {
+        resize(size / 2);
+        return ++consecutiveErrors < MAX_CONSECUTIVE_ERRORS;
+    }
+
+    private void resize(int newSize) {
+        newSize = Math.max(min, Math.min(max, newSize));
+        if (newSize != size) {
+            size = newSize;
+            System.out.println("Page size now " + size);
+        }
+        metrics.gauge("ApiPageSize", size, Metrics.Unit.COUNT);
+    }
+}
@@ -0,0 +1,227 @@
+package example;
+
+import software.amazon.awssdk.services.rdsdata.RdsDataClient;
+import software.amazon.awssdk.services.rdsdata.model.BadRequestException;
+import software.amazon.awssdk.services.rdsdata.model.DatabaseErrorException;
+import software.amazon.awssdk.services.rdsdata.model.ExecuteStatementRequest;
+import software.amazon.awssdk.services.rdsdata.model.ExecuteStatementResponse;
+import software.amazon.awssdk.services.rdsdata.model.SqlParameter;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Writes rows of a table that is range partitioned on a date column, sending each row straight
+ * to its partition through a {@link DataApiBatchWriter} of its own. Rows of one partition are
+ * batched together, so every request only touches that partition's indexes, and partitions are
+ * created the first time a row falls into them.
+ * <p>
+ * The parent table and its indexes are created, partitioned, only if there is no such table yet;
+ * an existing table is never altered from here. If it exists as a plain table, every row goes to
+ * the table itself until a migration (db/004_applications_partitioned.sql for applications)
+ * partitions it.
+ * <p>
+ * Not thread-safe, like the writers it drives.
+ */
+public class PartitionedBatchWriter implements AutoCloseable {
+
+    public enum Granularity {
+        NONE, MONTH, YEAR
+    }
+
+    /** Partitions known to exist, shared by every writer in the container. */
+    private static final Set<String> KNOWN_PARTITIONS = ConcurrentHashMap.newKeySet();
+    private static final Map<String, Boolean> PARTITIONED_TABLES = new ConcurrentHashMap<>();
+
+    private final RdsDataClient rdsDataClient;
+    private final String resourceArn;
+    private final String secretArn;
+    private final String database;
+    private final String table;
+    private final List<String> schemaSql;
+    private final Granularity granularity;
+    private final Function<String, DataApiBatchWriter> writerFactory;
+
+    private final Map<String, DataApiBatchWriter> writers = new LinkedHashMap<>();
+    private Consumer<List<SqlParameter>> commitListener = parameterSet -> {
+    };
+    private Metrics metrics = Metrics.NOOP;
+    private long rowsRejected;
+
+    /**
+     * @param schemaSql     statements creating {@code table} partitioned by range on its date
+     *                      column and its indexes, each with IF NOT EXISTS; run only when the
+     *                      table does not exist
+     * @param writerFactory returns a writer inserting into the given table or partition
+     */
+    public PartitionedBatchWriter(RdsDataClient rdsDataClient, String resourceArn, String secretArn, String database,
+                                  String table, List<String> schemaSql, Granularity granularity,
+                                  Function<String, DataApiBatchWriter> writerFactory) {
+        this.rdsDataClient = rdsDataClient;
+        this.resourceArn = resourceArn;
+        this.secretArn = secretArn;
+        this.database = database;
+        this.table = table;
+        this.schemaSql = schemaSql;
+        this.granularity = granularity;
+        this.writerFactory = writerFactory;
+    }
+
+    /**
+     * APPLICATION_PARTITIONS: year (default), month, or none to always write the parent table.
+     */
+    public static Granularity granularityFromEnvironment() {
+        String value = System.getenv("APPLICATION_PARTITIONS");
+        return value == null || value.isBlank() ? Granularity.YEAR : Granularity.valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * Passed on to the writer of every partition.
+     */
+    public void setCommitListener(Consumer<List<SqlParameter>> commitListener) {
+        this.commitListener = commitListener;
+        writers.values().forEach(writer -> writer.setCommitListener(commitListener));
+    }
+
+    /**
+     * Passed on to the writer of every partition; partitions checked or created are counted as
+     * PartitionsEnsured.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        writers.values().forEach(writer -> writer.setMetrics(metrics));
+    }
+
+    /**
+     * A row without a partition key is not written but counted as failed (and in RowsFailed), so
+     * one bad row cannot fail every retry of the rows around it.
+     */
+    public void add(LocalDate partitionKey, List<SqlParameter> parameterSet) {
+        if (partitionKey == null) {
+            rowsRejected++;
+            metrics.count("RowsFailed", 1);
+            System.out.println("Skipping " + table + " row without a partition key");
+            return;
+        }
+        writer(partitionKey).add(parameterSet);
+    }
+
+    public void flush() {
+        for (DataApiBatchWriter writer : writers.values()) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    public long getRowsWritten() {
+        return writers.values().stream().mapToLong(DataApiBatchWriter::getRowsWritten).sum();
+    }
+
+    public long getRowsFailed() {
+        return rowsRejected + writers.values().stream().mapToLong(DataApiBatchWriter::getRowsFailed).sum();
+    }
+
+    /**
+     * Rows committed per second of time spent inside flushes, over all partitions.
+     */
+    public double rowsPerSecond() {
+        double seconds = 0;
+        for (DataApiBatchWriter writer : writers.values()) {
+            if (writer.rowsPerSecond() > 0) {
+                seconds += writer.getRowsWritten() / writer.rowsPerSecond();
+            }
+        }
+        return seconds == 0 ? 0 : getRowsWritten() / seconds;
+    }
+
+    /**
+     * @return {@code table_2021} for yearly or {@code table_2021_03} for monthly partitions
+     */
+    String partitionName(LocalDate date) {
+        return switch (granularity) {
+            case NONE -> table;
+            case YEAR -> String.format("%s_%04d", table, date.getYear());
+            case MONTH -> String.format("%s_%04d_%02d", table, date.getYear(), date.getMonthValue());
+        };
+    }
+
+    private DataApiBatchWriter writer(LocalDate date) {
+        String target = granularity == Granularity.NONE || !isPartitioned() ? table : partitionName(date);
+        DataApiBatchWriter writer = writers.get(target);
+        if (writer == null) {
+            if (!target.equals(table)) {
+                ensurePartition(target, date);
+            }
+            writer = writerFactory.apply(target);
+            writer.setCommitListener(commitListener);
+            writer.setMetrics(metrics);
+            writers.put(target, writer);
+        }
+        return writer;
+    }
+
+    private boolean isPartitioned() {
+        return PARTITIONED_TABLES.computeIfAbsent(table, name -> {
+            if (count("SELECT count(*) FROM pg_class WHERE oid = to_regclass('" + name + "')") == 0) {
+                System.out.println("Creating partitioned table " + name);
+                schemaSql.forEach(this::executeDdl);
+            }
+            boolean partitioned = count("SELECT count(*) FROM pg_partitioned_table WHERE partrelid = to_regclass('" + name + "')") > 0;
+            if (!partitioned) {
+                System.out.println("Table " + name + " is not partitioned; writing all rows to it");
+            }
+            return partitioned;
+        });
+    }
+
+    private void ensurePartition(String partition, LocalDate date) {
+        if (KNOWN_PARTITIONS.contains(partition)) {
+            return;
+        }
+        LocalDate from = granularity == Granularity.MONTH ? date.withDayOfMonth(1) : date.withDayOfYear(1);
+        LocalDate to = granularity == Granularity.MONTH ? from.plusMonths(1) : from.plusYears(1);
+        executeDdl("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        KNOWN_PARTITIONS.add(partition);
+        metrics.count("PartitionsEnsured", 1);
+        System.out.println("Ensured partition " + partition + " for [" + from + ", " + to + ")");
+    }
+
+    private long count(String sql) {
+        return execute(sql).records().get(0).get(0).longValue();
+    }
+
+    /**
+     * IF NOT EXISTS does not stop two sessions creating the same relation at once; the loser's
+     * duplicate_table error (SQLSTATE 42P07) means it exists, which is all that was asked for.
+     */
+    private void executeDdl(String sql) {
+        try {
+            execute(sql);
+        } catch (BadRequestException | DatabaseErrorException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("42P07")) {
+                throw e;
+            }
+            System.out.println("Already created by another writer: " + sql);
+        }
+    }
+
+    private ExecuteStatementResponse execute(String sql) {
+        return rdsDataClient.executeStatement(ExecuteStatementRequest.builder()
+                .resourceArn(resourceArn)
+                .secretArn(secretArn)
+                .database(database)
+                .sql(sql)
+                .build());
+    }
+}
@@ -0,0 +1,70 @@
+package example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import gov.uspto.patent.model.entity.Entity;
+import gov.uspto.patent.model.entity.Name;
+import gov.uspto.patent.model.entity.NamePerson;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+
+/**
+ * Writes the inventors, applicants or assignees of a patent as the compact
+ * {@code [{"entityType":..,"firstName":..,"lastName":..}]} array stored in the applications table,
+ * straight from the model objects. This is the same projection filterParties builds, without
+ * serializing the whole entity, re-parsing it into a tree and pretty-printing a second tree.
+ * <p>
+ * Missing values are written as "" like filterParties does; organisations have no first or last
+ * name, so both are "". middleName is not emitted because filterParties looks for it on the
+ * entity rather than on its name, where it never exists.
+ */
+public final class PartyProjection {
+
+    private static final int MAX_RETAINED_CHARS = 64 * 1024;
+
+    private static final ThreadLocal<StringWriter> BUFFER = ThreadLocal.withInitial(() -> new StringWriter(1024));
+
+    private PartyProjection() {
+    }
+
+    public static String toJson(Collection<? extends Entity> parties) throws IOException {
+        StringWriter buffer = BUFFER.get();
+        StringBuffer chars = buffer.getBuffer();
+        chars.setLength(0);
+        try (JsonGenerator generator = Resources.objectMapper().getFactory().createGenerator(buffer)) {
+            generator.writeStartArray();
+            if (parties != null) {
+                for (Entity party : parties) {
+                    writeParty(generator, party);
+                }
+            }
+            generator.writeEndArray();
+        }
+        String json = chars.toString();
+        if (chars.capacity() > MAX_RETAINED_CHARS) {
+            // don't let one huge party list pin a large buffer to the thread
+            BUFFER.remove();
+        }
+        return json;
+    }
+
+    private static void writeParty(JsonGenerator generator, Entity party) throws IOException {
+        Object entityType = party.getEntityType();
+        Name name = party.getName();
+        NamePerson person = name instanceof NamePerson ? (NamePerson) name : null;
+
+        generator.writeStartObject();
+        // the enum's name, which is what the default ObjectMapper serialization wrote; toString()
+        // may be overridden to something else
+        generator.writeStringField("entityType", entityType == null ? ""
+                : entityType instanceof Enum<?> type ? type.name() : entityType.toString());
+        generator.writeStringField("firstName", person == null ? "" : nullToEmpty(person.getFirstName()));
+        generator.writeStringField("lastName", person == null ? "" : nullToEmpty(person.getLastName()));
+        generator.writeEndObject();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
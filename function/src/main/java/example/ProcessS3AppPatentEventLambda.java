@@ -10,139 +10,651 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import gov.uspto.common.filter.FileFilterChain;
-import gov.uspto.common.filter.SuffixFilter;
 import gov.uspto.patent.PatentDocFormat;
 import gov.uspto.patent.PatentDocFormatDetect;
-import gov.uspto.patent.PatentReader;
 import gov.uspto.patent.bulk.DumpFileAps;
-import gov.uspto.patent.bulk.DumpFileXml;
 import gov.uspto.patent.bulk.DumpReader;
+import gov.uspto.patent.model.DocumentId;
 import gov.uspto.patent.model.Patent;
-import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.core.sync.ResponseTransformer;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.rdsdata.RdsDataClient;
 import software.amazon.awssdk.services.rdsdata.model.*;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.Date;
 import java.time.LocalDate;
-import java.util.HashMap;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 
 public class ProcessS3AppPatentEventLambda implements RequestHandler<S3Event, String> {
     private static final String DB_CLUSTER_ARN = "arn:aws:rds:us-east-1:508582898882:cluster:datacollector";
     private static final String DB_CREDENTIALS_ARN = "arn:aws:secretsmanager:us-east-1:508582898882:secret:rds!cluster-ce583560-543c-4698-81c0-e3a91caf27f1-S0lGc5";
     private static final String DB_NAME = "postgres";
+    private static final Path APPLICATION_INDEX_PATH = Paths.get("/tmp", "application-ids.idx");
+    private static ApplicationIdIndex applicationIndex;
+    private static final Path RELATION_GRAPH_PATH = Paths.get("/tmp", "relations.graph");
+    private static RelationGraph.Builder relationGraph;
+    /** Spooled row: the applications columns, ending with the application number, then relation pairs. */
+    private static final int APPLICATION_NUMBER_FIELD = 6;
+    private static final int RELATION_FIELDS = 7;
+    /**
+     * Edge ids come from a sequence and are taken before commit, so rows just below the newest one
+     * read may still turn up; each catch-up starts this far back and re-adds what it already had.
+     */
+    private static final long RELATION_CATCH_UP_OVERLAP = 50_000;
+    private static final String SPOOL_OFFSET_METADATA = "committed-offset";
+    private static final String APPLICATIONS_TABLE = "applications";
+    /**
+     * Creates the applications table partitioned on filingDate when there is none yet, in the same
+     * layout db/004_applications_partitioned.sql converts an existing table to: rows without a
+     * filingDate can only live in the DEFAULT partition, and the writer never sends it any.
+     */
+    private static final List<String> APPLICATIONS_SCHEMA_SQL = List.of(
+            "CREATE TABLE IF NOT EXISTS applications (applicationId text NOT NULL, filingDate date, inventionTitle text, inventors jsonb, applicants jsonb, assignees jsonb, applicationNumber text) PARTITION BY RANGE (filingDate)",
+            "CREATE TABLE IF NOT EXISTS applications_default PARTITION OF applications DEFAULT",
+            "CREATE UNIQUE INDEX IF NOT EXISTS applications_applicationid_filingdate_key ON applications (applicationId, filingDate)",
+            "CREATE INDEX IF NOT EXISTS applications_applicationnumber_idx ON applications (applicationNumber)");
+    /**
+     * Inserts into the applications table or one of its partitions, named by the format argument.
+     * applicationId is the publication number; applicationNumber is what the other tables join on.
+     * A row a spool replay writes again is skipped on the (applicationId, filingDate) unique index
+     * (db/005_applications_unique.sql).
+     */
+    private static final String INSERT_APPLICATION_SQL = "INSERT INTO %s (applicationId, filingDate, inventionTitle, inventors, applicants, assignees, applicationNumber) VALUES (:applicationId, :filingDate, :inventionTitle, :inventors, :applicants, :assignees, :applicationNumber) ON CONFLICT DO NOTHING";
+    /** Edges run from a patent's application number to the application numbers it continues; see db/001_applications_relations.sql. */
+    private static final String INSERT_RELATION_SQL = "INSERT INTO applications_relations (applicationNumber, relatedApplicationNumber, relationType) VALUES (:applicationNumber, :relatedApplicationNumber, :relationType) ON CONFLICT DO NOTHING";
+    private static final String SELECT_RELATIONS_SQL = "SELECT id, applicationNumber, relatedApplicationNumber, relationType FROM applications_relations WHERE id > :after ORDER BY id LIMIT :limit";
+
+    private final Metrics metrics = Metrics.forHandler("ProcessS3AppPatentEventLambda");
+
+    /**
+     * Outcome of ingesting one S3 object. {@code spoolKept} is set when the object failed after it
+     * was fully parsed and its sealed spool was kept to be replayed by the next delivery.
+     */
+    public record RecordResult(String bucket, String key, boolean succeeded, long documentsRead,
+                               long documentsSkipped, long documentsParsed, long rowsWritten, long rowsFailed,
+                               String error, boolean spoolKept) {
+
+        static RecordResult failed(String bucket, String key, Exception e, boolean spoolKept) {
+            return new RecordResult(bucket, key, false, 0, 0, 0, 0, 0, String.valueOf(e.getMessage()), spoolKept);
+        }
+    }
 
+    /**
+     * Ingests every object in the event, up to S3_RECORD_CONCURRENCY (default 2) at a time. Each
+     * object gets its own /tmp path or stream, and a failure only fails that object.
+     * <p>
+     * A kept spool is only replayed when the same object is delivered again. If any record kept
+     * one, the invocation fails once every record is done, so Lambda retries the asynchronous S3
+     * event (twice by default); records that did get in are skipped by the application index on
+     * the retry. Past the retries the spool waits for a manual re-send or an SQS redelivery
+     * through {@link SqsIngestLambda}, which reports such records as batch item failures.
+     *
+     * @return JSON array with one {@link RecordResult} per record, in event order
+     */
     @Override
     public String handleRequest(S3Event s3event, Context context) {
-       LambdaLogger logger = context.getLogger();
-        S3EventNotificationRecord record = s3event.getRecords().get(0);
-        String srcBucket = record.getS3().getBucket().getName();
-        String srcKey = record.getS3().getObject().getUrlDecodedKey();
+        LambdaLogger logger = context.getLogger();
+        List<S3EventNotificationRecord> records = s3event.getRecords();
+        try {
+            List<Callable<RecordResult>> tasks = new ArrayList<>(records.size());
+            for (S3EventNotificationRecord record : records) {
+                String srcBucket = record.getS3().getBucket().getName();
+                String srcKey = record.getS3().getObject().getUrlDecodedKey();
+                tasks.add(() -> ingest(srcBucket, srcKey));
+            }
+            List<RecordResult> results = ingestAll(tasks);
+            String summary = Resources.objectMapper().writeValueAsString(results);
+            logger.log("Ingest summary " + summary);
+            long kept = results.stream().filter(RecordResult::spoolKept).count();
+            if (kept > 0) {
+                throw new IllegalStateException(kept + " of " + results.size()
+                        + " objects kept a spool for replay; failing so the event is delivered again");
+            }
+            return summary;
+        } catch (RuntimeException e) {
+            logger.log("Exception " + e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            logger.log("Exception " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            finishInvocation();
+        }
+    }
+
+    /**
+     * Runs the tasks on a pool of S3_RECORD_CONCURRENCY threads; every task is expected to
+     * report its own failure in its result.
+     */
+    List<RecordResult> ingestAll(List<Callable<RecordResult>> tasks) throws InterruptedException, ExecutionException {
+        int concurrency = Math.max(1, Math.min(tasks.size(), intEnv("S3_RECORD_CONCURRENCY", 2)));
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<RecordResult> results = new ArrayList<>(tasks.size());
+            for (Future<RecordResult> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Streams or downloads one dump, parses it and writes its applications. Never throws: any
+     * failure is logged and reported in the result.
+     * <p>
+     * Parsed rows go through a {@link RecordSpool}: the pipeline appends them and a flusher thread
+     * drains them into the database, so a database failure does not stop or waste the parse. When
+     * the dump was parsed completely but not all rows made it into the database, the spool is kept
+     * and the next delivery of the same object only replays it.
+     */
+    RecordResult ingest(String srcBucket, String srcKey) {
         Path localPath = Paths.get("/tmp", srcKey);
-        int limit = 1;
 
-        S3Client s3Client = S3Client.builder().build();
+        S3Client s3Client = Resources.s3();
+        RdsDataClient rdsDataClient = Resources.rdsData();
+
+        DocumentSource documents = null;
+        RecordSpool spool = null;
+        boolean drained = false;
+        try {
+            ApplicationIdIndex index = applicationIndex(s3Client);
+            PartitionedBatchWriter applicationWriter = newApplicationWriter(rdsDataClient);
+            applicationWriter.setMetrics(metrics);
+            applicationWriter.setCommitListener(params -> index.add(ApplicationIdIndex.toKey(stringValue(params, "applicationId"))));
+            RelationGraph.Builder graph = relationGraph(s3Client, rdsDataClient);
+            DataApiBatchWriter relationWriter = newWriter(rdsDataClient, INSERT_RELATION_SQL);
+            relationWriter.setMetrics(metrics);
+            relationWriter.setCommitListener(params -> graph.add(
+                    RelationGraph.normalize(stringValue(params, "applicationNumber")),
+                    RelationGraph.normalize(stringValue(params, "relatedApplicationNumber")),
+                    stringValue(params, "relationType")));
+
+            spool = openSpool(s3Client, srcBucket, srcKey);
+            IngestPipeline.Result result = new IngestPipeline.Result();
+            if (spool.isSealed()) {
+                System.out.println("Replaying spooled rows of " + srcKey + " from offset " + spool.committedOffset());
+                metrics.count("SpoolReplays", 1);
+                drainSpool(spool, applicationWriter, relationWriter);
+            } else {
+                // rows of a parse that never finished are parsed again
+                spool.reset();
+                PatentDocFormat patentDocFormat = new PatentDocFormatDetect().fromFileName(localPath.toFile());
+                long streamStart = System.nanoTime();
+                long streamedBytes = -1;
+                if (isStreamable(patentDocFormat)) {
+                    streamedBytes = s3Client.headObject(HeadObjectRequest.builder()
+                            .bucket(srcBucket)
+                            .key(srcKey)
+                            .build()).contentLength();
+                    documents = openStream(s3Client, srcBucket, srcKey, streamedBytes);
+                } else {
+                    Files.createDirectories(localPath.getParent());
+                    documents = openFile(s3Client, srcBucket, srcKey, localPath, patentDocFormat);
+                }
+
+                IngestPipeline pipeline = IngestPipeline.fromEnvironment(patentDocFormat)
+                        .withDocumentFilter(document -> !index.contains(ApplicationIdIndex.peekDocNumber(document)))
+                        .withMetrics(metrics);
+                RecordSpool rows = spool;
+                FutureTask<Void> flusher = new FutureTask<>(() -> {
+                    drainSpool(rows, applicationWriter, relationWriter);
+                    return null;
+                });
+                Thread flusherThread = new Thread(flusher, "spool-flusher");
+                flusherThread.start();
+                try {
+                    result = pipeline.run(documents, new IngestPipeline.PatentWriter() {
+                        @Override
+                        public void write(Patent patent) throws Exception {
+                            rows.append(toRow(patent));
+                        }
+
+                        @Override
+                        public void flush() throws Exception {
+                            rows.flush();
+                        }
+                    });
+                    spool.seal();
+                } finally {
+                    // lets the flusher finish with what is there if the parse broke off
+                    spool.abandon();
+                    flusherThread.join();
+                }
+                metrics.count("SpoolBytes", spool.size());
+                if (streamedBytes >= 0) {
+                    // download and parsing overlap, so this is the rate the archive was consumed at
+                    metrics.rate("S3DownloadBytesPerSec", streamedBytes, System.nanoTime() - streamStart, Metrics.Unit.BYTES_PER_SECOND);
+                }
+                try {
+                    flusher.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            drained = true;
+            System.out.println("Ingest complete for " + srcKey + ": " + result
+                    + " rowsWritten=" + applicationWriter.getRowsWritten()
+                    + " rowsFailed=" + applicationWriter.getRowsFailed()
+                    + " relationsWritten=" + relationWriter.getRowsWritten()
+                    + String.format(" rowsPerSec=%.1f", applicationWriter.rowsPerSecond()));
+            return new RecordResult(srcBucket, srcKey, true, result.read.get(), result.skipped.get(),
+                    result.parsed.get(), applicationWriter.getRowsWritten(), applicationWriter.getRowsFailed(), null, false);
+        } catch (Exception e) {
+            System.out.println("Exception ingesting s3://" + srcBucket + "/" + srcKey + ": " + e.getMessage());
+            // closeSpool below keeps a sealed spool that was not drained
+            return RecordResult.failed(srcBucket, srcKey, e, !drained && spool != null && spool.isSealed());
+        } finally {
+            try {
+                if (documents != null) {
+                    documents.close();
+                }
+                if (Files.exists(localPath)) {
+                    Files.delete(localPath);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            closeSpool(s3Client, spool, srcBucket, srcKey, drained);
+        }
+    }
+
+    /**
+     * Writes the spooled rows from the committed offset on, following the spool until it is sealed
+     * or abandoned: the application to its filingDate partition and, when its application number
+     * is known, its continuity links to {@code relationWriter}. An application without a readable
+     * filingDate is counted as failed and skipped rather than failing the drain, which would keep
+     * the spool failing on the same row at every replay. The offset is committed after every
+     * DATA_API_BATCH_ROWS rows once both writers have them in the database.
+     */
+    private static void drainSpool(RecordSpool spool, PartitionedBatchWriter writer, DataApiBatchWriter relationWriter)
+            throws Exception {
+        int batchRows = intEnv("DATA_API_BATCH_ROWS", 500);
+        int[] rows = {0};
+        long end = spool.drain(spool.committedOffset(), (fields, endOffset) -> {
+            writer.add(filingDate(fields[1]), toParameters(fields));
+            String applicationNumber = fields[APPLICATION_NUMBER_FIELD];
+            for (int i = RELATION_FIELDS; applicationNumber != null && i + 1 < fields.length; i += 2) {
+                relationWriter.add(toRelationParameters(applicationNumber, fields[i], fields[i + 1]));
+            }
+            if (++rows[0] % batchRows == 0) {
+                writer.flush();
+                relationWriter.flush();
+                spool.commit(endOffset);
+            }
+        });
+        writer.flush();
+        relationWriter.flush();
+        spool.commit(end);
+    }
+
+    /**
+     * Spools live under /tmp/spool. With SPOOL_BUCKET set, a spool kept by another container is
+     * fetched from there when there is none locally.
+     */
+    private static RecordSpool openSpool(S3Client s3Client, String srcBucket, String srcKey) throws IOException {
+        Path path = Paths.get("/tmp", "spool", srcBucket, srcKey + ".spool");
+        Files.createDirectories(path.getParent());
+        String spoolBucket = System.getenv("SPOOL_BUCKET");
+        String committedOffset = null;
+        if (spoolBucket != null && !Files.exists(path)) {
+            try {
+                committedOffset = s3Client.getObject(GetObjectRequest.builder()
+                                .bucket(spoolBucket)
+                                .key(spoolKey(srcBucket, srcKey))
+                                .build(),
+                        ResponseTransformer.toFile(path)).metadata().get(SPOOL_OFFSET_METADATA);
+                System.out.println("Fetched spool of " + srcKey + " from s3://" + spoolBucket);
+            } catch (NoSuchKeyException e) {
+                // nothing was spooled for this object
+            }
+        }
+        RecordSpool spool = RecordSpool.open(path);
+        if (committedOffset != null) {
+            spool.commit(Long.parseLong(committedOffset));
+        }
+        return spool;
+    }
+
+    /**
+     * A drained spool is deleted, as is one that was never sealed (it is useless without its
+     * dump). A sealed spool that did not drain is kept for the next delivery of the object, and
+     * copied to SPOOL_BUCKET when that is set.
+     */
+    private static void closeSpool(S3Client s3Client, RecordSpool spool, String srcBucket, String srcKey, boolean drained) {
+        if (spool == null) {
+            return;
+        }
+        String spoolBucket = System.getenv("SPOOL_BUCKET");
+        try {
+            if (drained || !spool.isSealed()) {
+                spool.delete();
+                if (drained && spoolBucket != null) {
+                    s3Client.deleteObject(DeleteObjectRequest.builder().bucket(spoolBucket).key(spoolKey(srcBucket, srcKey)).build());
+                }
+                return;
+            }
+            spool.close();
+            System.out.println("Kept spool " + spool.getFile() + " (" + Files.size(spool.getFile()) + " bytes) for replay");
+            if (spoolBucket != null) {
+                s3Client.putObject(PutObjectRequest.builder()
+                                .bucket(spoolBucket)
+                                .key(spoolKey(srcBucket, srcKey))
+                                .metadata(Map.of(SPOOL_OFFSET_METADATA, Long.toString(spool.committedOffset())))
+                                .build(),
+                        RequestBody.fromFile(spool.getFile()));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not clean up spool of " + srcKey + ": " + e.getMessage());
+        }
+    }
+
+    private static String spoolKey(String srcBucket, String srcKey) {
+        return "spool/" + srcBucket + "/" + srcKey + ".spool";
+    }
+
+    /**
+     * Saves the application index and emits the metrics; call once after all records of an
+     * invocation are done.
+     */
+    void finishInvocation() {
+        saveApplicationIndex();
+        saveRelationGraph();
+        metrics.flush();
+    }
+
+    /**
+     * A failed snapshot only costs re-checking some documents later, so it is logged and ignored.
+     */
+    private void saveApplicationIndex() {
+        ApplicationIdIndex index;
+        synchronized (ProcessS3AppPatentEventLambda.class) {
+            index = applicationIndex;
+        }
+        if (index == null) {
+            return;
+        }
+        try {
+            index.save(APPLICATION_INDEX_PATH, Resources.s3(), System.getenv("APPLICATION_INDEX_BUCKET"), applicationIndexKey());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not save application index: " + e.getMessage());
+        }
+    }
+
+    private void saveRelationGraph() {
+        RelationGraph.Builder graph;
+        synchronized (ProcessS3AppPatentEventLambda.class) {
+            graph = relationGraph;
+        }
+        if (graph == null) {
+            return;
+        }
+        try {
+            graph.build().save(RELATION_GRAPH_PATH, Resources.s3(), System.getenv("APPLICATION_INDEX_BUCKET"), relationGraphKey());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not save relation graph: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Greenbook (APS) dumps are fixed-width text rather than concatenated XML and are read through
+     * DumpFileAps, so they keep the /tmp path. INGEST_MODE=file forces the /tmp path for everything.
+     */
+    static boolean isStreamable(PatentDocFormat patentDocFormat) {
+        return patentDocFormat != PatentDocFormat.Greenbook
+                && !"file".equalsIgnoreCase(System.getenv("INGEST_MODE"));
+    }
+
+    /**
+     * Streams the object through parallel ranged GETs so documents are parsed while the rest
+     * of the archive is still downloading.
+     */
+    private DocumentSource openStream(S3Client s3Client, String srcBucket, String srcKey, long contentLength) throws IOException {
+        int rangeSize = intEnv("S3_RANGE_SIZE_MB", 8) * 1024 * 1024;
+        int readAhead = intEnv("S3_READ_AHEAD", 4);
+        System.out.println("Streaming s3://" + srcBucket + "/" + srcKey + " (" + contentLength + " bytes)");
+        metrics.count("S3DownloadBytes", contentLength);
+
+        InputStream in = new S3RangedInputStream(s3Client, srcBucket, srcKey, contentLength, rangeSize, readAhead);
+        return new XmlDocumentStream(in, srcKey.toLowerCase().endsWith(".zip"));
+    }
 
+    private DocumentSource openFile(S3Client s3Client, String srcBucket, String srcKey, Path localPath,
+                                    PatentDocFormat patentDocFormat) throws IOException {
         // Download the file to /tmp directory
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                 .bucket(srcBucket)
                 .key(srcKey)
                 .build();
+        long downloadStart = System.nanoTime();
         s3Client.getObject(getObjectRequest, ResponseTransformer.toFile(localPath));
+        long downloadedBytes = Files.size(localPath);
+        metrics.count("S3DownloadBytes", downloadedBytes);
+        metrics.rate("S3DownloadBytesPerSec", downloadedBytes, System.nanoTime() - downloadStart, Metrics.Unit.BYTES_PER_SECOND);
 
         // Log download completion and create File object
         System.out.println("Download complete. File saved to /tmp directory.");
 
-        RdsDataClient rdsDataClient = RdsDataClient.builder()
-                .region(Region.US_EAST_1)
-                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
-                .build();
+        // Create a File object from the downloaded file
+        File inputFile = localPath.toFile();
+        // Perform operations on the File object as needed
+        System.out.println("File object created: " + inputFile.getAbsolutePath());
+
+        if (patentDocFormat == PatentDocFormat.Greenbook) {
+            DumpReader dumpReader = new DumpFileAps(inputFile);
+            dumpReader.open();
+            return DocumentSource.of(dumpReader);
+        }
+
+        if (srcKey.toLowerCase().endsWith(".zip")) {
+            // unpack once and put the plain XML where the zip was, so the usual cleanup removes it
+            Path extracted = localPath.resolveSibling(localPath.getFileName() + ".xml");
+            MappedDocumentScanner.extractXml(localPath, extracted);
+            Files.move(extracted, localPath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Extracted " + Files.size(localPath) + " bytes of XML");
+        }
+        return new MappedDocumentScanner(localPath);
+    }
 
+    static List<SqlParameter> toParameters(Patent patent) throws Exception {
+        return toParameters(toRow(patent));
+    }
+
+    /**
+     * The applications row of a patent as plain strings, in {@link #INSERT_APPLICATION_SQL} order
+     * and ending with its application number (null if the document has none), followed by a
+     * (related application number, relation type) pair per continuity link; this is what gets
+     * spooled.
+     * applicationId is the publication number, so relations are keyed by the application number,
+     * which is what continuity data refers to.
+     */
+    static String[] toRow(Patent patent) throws Exception {
+        String applicationId = patent.getDocumentId().getDocNumber();
+        LocalDate filingDate = patent.getDocumentDate() == null ? null : patent.getDocumentDate().getDate();
+        String inventionTitle = patent.getTitle();
+        String inventors = PartyProjection.toJson(patent.getInventors());
+        String applicants = PartyProjection.toJson(patent.getApplicants());
+        String assignees = PartyProjection.toJson(patent.getAssignee());
+        List<DocumentId> relations = patent.getRelationIds();
+        int relationCount = relations == null ? 0 : relations.size();
+        String[] row = new String[RELATION_FIELDS + 2 * relationCount];
+        row[0] = applicationId;
+        row[1] = filingDate == null ? null : Date.valueOf(filingDate).toString();
+        row[2] = inventionTitle;
+        row[3] = inventors;
+        row[4] = applicants;
+        row[5] = assignees;
+        row[APPLICATION_NUMBER_FIELD] = patent.getApplicationId() == null ? null : patent.getApplicationId().getDocNumber();
+        for (int i = 0; i < relationCount; i++) {
+            DocumentId related = relations.get(i);
+            row[RELATION_FIELDS + 2 * i] = related.getDocNumber();
+            row[RELATION_FIELDS + 2 * i + 1] = String.valueOf(related.getType());
+        }
+        return row;
+    }
+
+    /**
+     * @return the spooled filingDate, or null if it is missing or unreadable
+     */
+    static LocalDate filingDate(String field) {
+        if (field == null || field.isBlank()) {
+            return null;
+        }
         try {
-            // Create a File object from the downloaded file
-            File inputFile = localPath.toFile();
-            // Perform operations on the File object as needed
-            System.out.println("File object created: " + inputFile.getAbsolutePath());
-
-            PatentDocFormat patentDocFormat = new PatentDocFormatDetect().fromFileName(inputFile);
-            DumpReader dumpReader;
-            switch (patentDocFormat) {
-                case Greenbook:
-                    dumpReader = new DumpFileAps(inputFile);
-                    break;
-                default:
-                    dumpReader = new DumpFileXml(inputFile);
-                    FileFilterChain filters = new FileFilterChain();
-                    filters.addRule(new SuffixFilter("xml"));
-                    dumpReader.setFileFilter(filters);
-            }
+            return LocalDate.parse(field);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 
-            dumpReader.open();
-            PatentReader patentReader = new PatentReader(patentDocFormat);
-
-            for (int i = 1; dumpReader.hasNext() && i <= limit; i++) {
-                String xmlDocStr = (String) dumpReader.next();
-
-                try (StringReader rawText = new StringReader(xmlDocStr)) {
-                    Patent patent = patentReader.read(rawText);
-                    String applicationId = patent.getDocumentId().getDocNumber();
-                    LocalDate filingDate = patent.getDocumentDate().getDate();
-                    String inventionTitle = patent.getTitle();
-                    ObjectMapper mapper = new ObjectMapper();
-                    String inventors = mapper.writeValueAsString(patent.getInventors());
-                    String applicants = mapper.writeValueAsString(patent.getApplicants());
-                    String assignees = mapper.writeValueAsString(patent.getAssignee());
-                    Date sqlFilingDate = Date.valueOf(filingDate);
-
-                    Map<String, SqlParameter> params = new HashMap<>();
-                    params.put("applicationId", param("applicationId", applicationId));
-                    params.put("filingDate", param("filingDate", sqlFilingDate.toString(), TypeHint.DATE));
-                    params.put("inventionTitle", param("inventionTitle", inventionTitle));
-                    params.put("inventors",  param("inventors", inventors, TypeHint.JSON));
-                    params.put("applicants", param("applicants", applicants, TypeHint.JSON));
-                    params.put("assignees",  param("assignees", assignees, TypeHint.JSON));
-
-
-                    String sql = "INSERT INTO applications (applicationId, filingDate, inventionTitle, inventors, applicants, assignees) VALUES (:applicationId, :filingDate, :inventionTitle, :inventors, :applicants, :assignees)";
-                    ExecuteStatementRequest request = ExecuteStatementRequest.builder()
-                            .secretArn(DB_CREDENTIALS_ARN)
-                            .resourceArn(DB_CLUSTER_ARN)
-                            .database(DB_NAME)
-                            .sql(sql)
-                            .parameters(params.values())
-                            .build();
-                    ExecuteStatementResponse response = rdsDataClient.executeStatement(request);
-
-                    System.out.println("Rows affected: " + response.numberOfRecordsUpdated());
-                }
+    static List<SqlParameter> toRelationParameters(String applicationNumber, String relatedApplicationNumber, String relationType) {
+        List<SqlParameter> params = new ArrayList<>(3);
+        params.add(param("applicationNumber", applicationNumber));
+        params.add(param("relatedApplicationNumber", relatedApplicationNumber));
+        params.add(param("relationType", relationType));
+        return params;
+    }
 
-                dumpReader.close();
+    static List<SqlParameter> toParameters(String[] row) {
+        List<SqlParameter> params = new ArrayList<>(7);
+        params.add(param("applicationId", row[0]));
+        params.add(param("filingDate", row[1], TypeHint.DATE));
+        params.add(param("inventionTitle", row[2]));
+        params.add(param("inventors", row[3], TypeHint.JSON));
+        params.add(param("applicants", row[4], TypeHint.JSON));
+        params.add(param("assignees", row[5], TypeHint.JSON));
+        params.add(nullableParam("applicationNumber", row[APPLICATION_NUMBER_FIELD]));
+        return params;
+    }
+
+    /**
+     * Rows are batched per filingDate partition (see
+     * {@link PartitionedBatchWriter#granularityFromEnvironment()}).
+     */
+    private PartitionedBatchWriter newApplicationWriter(RdsDataClient rdsDataClient) {
+        return new PartitionedBatchWriter(rdsDataClient, DB_CLUSTER_ARN, DB_CREDENTIALS_ARN, DB_NAME, APPLICATIONS_TABLE,
+                APPLICATIONS_SCHEMA_SQL, PartitionedBatchWriter.granularityFromEnvironment(),
+                table -> newWriter(rdsDataClient, String.format(INSERT_APPLICATION_SQL, table)));
+    }
+
+    /**
+     * Batches are flushed every DATA_API_BATCH_ROWS rows, DATA_API_BATCH_BYTES bytes or
+     * DATA_API_BATCH_DELAY_MS milliseconds, whichever comes first.
+     */
+    private DataApiBatchWriter newWriter(RdsDataClient rdsDataClient, String sql) {
+        return new DataApiBatchWriter(rdsDataClient, DB_CLUSTER_ARN, DB_CREDENTIALS_ARN, DB_NAME, sql,
+                intEnv("DATA_API_BATCH_ROWS", 500),
+                intEnv("DATA_API_BATCH_BYTES", DataApiBatchWriter.MAX_REQUEST_BYTES),
+                intEnv("DATA_API_BATCH_DELAY_MS", 5000));
+    }
+
+    /**
+     * The index is loaded once per container and kept across warm invocations. Set
+     * APPLICATION_INDEX_BUCKET (and optionally APPLICATION_INDEX_KEY) to share snapshots between
+     * containers through S3.
+     */
+    private static synchronized ApplicationIdIndex applicationIndex(S3Client s3Client) {
+        if (applicationIndex == null) {
+            applicationIndex = ApplicationIdIndex.load(APPLICATION_INDEX_PATH, s3Client,
+                    System.getenv("APPLICATION_INDEX_BUCKET"), applicationIndexKey());
+        }
+        return applicationIndex;
+    }
+
+    /**
+     * Like the application index, the relation graph is loaded once per container and its
+     * snapshot shared through APPLICATION_INDEX_BUCKET (key RELATION_GRAPH_KEY, default
+     * index/relations.graph). Containers save their snapshots over each other, so the snapshot is
+     * only a head start: edges written since it was taken are read back from applications_relations.
+     */
+    static synchronized RelationGraph.Builder relationGraph(S3Client s3Client, RdsDataClient rdsDataClient) {
+        if (relationGraph == null) {
+            RelationGraph.Builder graph = new RelationGraph.Builder(RelationGraph.load(RELATION_GRAPH_PATH, s3Client,
+                    System.getenv("APPLICATION_INDEX_BUCKET"), relationGraphKey()));
+            catchUp(graph, rdsDataClient);
+            relationGraph = graph;
+        }
+        return relationGraph;
+    }
+
+    /**
+     * Adds the applications_relations rows after the graph's synced edge id, RELATION_CATCH_UP_ROWS
+     * (default 10000) per request.
+     */
+    private static void catchUp(RelationGraph.Builder graph, RdsDataClient rdsDataClient) {
+        int pageRows = intEnv("RELATION_CATCH_UP_ROWS", 10_000);
+        long after = Math.max(0, graph.syncedEdgeId() - RELATION_CATCH_UP_OVERLAP);
+        long added = 0;
+        while (true) {
+            List<List<Field>> records = rdsDataClient.executeStatement(ExecuteStatementRequest.builder()
+                    .resourceArn(DB_CLUSTER_ARN)
+                    .secretArn(DB_CREDENTIALS_ARN)
+                    .database(DB_NAME)
+                    .sql(SELECT_RELATIONS_SQL)
+                    .parameters(SqlParameter.builder().name("after").value(Field.builder().longValue(after).build()).build(),
+                            SqlParameter.builder().name("limit").value(Field.builder().longValue((long) pageRows).build()).build())
+                    .build()).records();
+            for (List<Field> record : records) {
+                after = record.get(0).longValue();
+                graph.add(RelationGraph.normalize(record.get(1).stringValue()),
+                        RelationGraph.normalize(record.get(2).stringValue()), record.get(3).stringValue());
             }
-        } catch (Exception e) {
-            logger.log("Exception " + e.getMessage());
-        } finally {
-            try {
-                if (Files.exists(localPath)) {
-                    Files.delete(localPath);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+            added += records.size();
+            graph.syncedTo(after);
+            if (records.size() < pageRows) {
+                break;
             }
         }
-        return "Ok";
+        System.out.println("Relation graph caught up to edge " + graph.syncedEdgeId() + " (" + added + " rows read)");
+    }
+
+    private static String relationGraphKey() {
+        String key = System.getenv("RELATION_GRAPH_KEY");
+        return key == null || key.isBlank() ? "index/relations.graph" : key;
+    }
+
+    private static String applicationIndexKey() {
+        String key = System.getenv("APPLICATION_INDEX_KEY");
+        return key == null || key.isBlank() ? "index/application-ids.idx" : key;
+    }
+
+    private static String stringValue(List<SqlParameter> params, String name) {
+        for (SqlParameter param : params) {
+            if (name.equals(param.name())) {
+                return param.value().stringValue();
+            }
+        }
+        return null;
+    }
+
+    static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
     }
 
 
@@ -156,8 +668,18 @@ public class ProcessS3AppPatentEventLambda implements RequestHandler<S3Event, St
 
         return SqlParameter.builder().name(name).value(Field.builder().stringValue(value).build()).build();
     }
+
+    /** Like {@link #param(String, String)}, but binds SQL NULL for a null value. */
+    static SqlParameter nullableParam(String name, String value) {
+        return value == null ? SqlParameter.builder().name(name).value(Field.builder().isNull(true).build()).build() : param(name, value);
+    }
+
+    /**
+     * Projects a serialized party list down to entityType and names. New code should use
+     * {@link PartyProjection}, which writes the same projection straight from the model.
+     */
     public static String filterParties(String jsonArray) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = Resources.objectMapper();
         ArrayNode arrayNode = (ArrayNode) mapper.readTree(jsonArray);
         ArrayNode filteredArray = mapper.createArrayNode();
 
@@ -2,33 +2,58 @@ package example;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 public class PtabLambda implements RequestHandler<Object, String> {
 
+    static final RecordBinder PROCEEDING_BINDER = RecordBinder.builder()
+            .date("proceedingFilingDate")
+            .text("proceedingStatusCategory")
+            .text("proceedingNumber")
+            .date("proceedingLastModifiedDate")
+            .text("proceedingTypeCategory")
+            .text("subproceedingTypeCategory")
+            .integer("respondentTechnologyCenterNumber")
+            .text("respondentPartyName")
+            .integer("respondentGroupArtUnitNumber")
+            .text("respondentApplicationNumberText")
+            .date("decisionDate")
+            .integer("appellantTechnologyCenterNumber")
+            .text("appellantPatentOwnerName")
+            .text("appellantPartyName")
+            .integer("appellantGroupArtUnitNumber")
+            .text("appellantInventorName")
+            .text("appellantCounselName")
+            .text("appellantApplicationNumberText")
+            .textArray("additionalRespondentPartyDataBag")
+            .build();
+
+    static final String[] PROCEEDING_COLUMNS = PROCEEDING_BINDER.columns();
+
+    /** Query parameter that limits the proceedings API to records modified on or after a date. */
+    static final String LAST_MODIFIED_FROM_PARAMETER = "proceedingLastModifiedFromDate";
+
+    /** The API expects MM-dd-yyyy here; {@link RecordBinder.Builder#US_DATE} is lenient for parsing only. */
+    static final DateTimeFormatter LAST_MODIFIED_FROM_FORMAT = DateTimeFormatter.ofPattern("MM-dd-uuuu");
+
+    private final Metrics metrics = Metrics.forHandler("PtabLambda");
 
     @Override
     public String handleRequest(Object input, Context context) {
@@ -36,16 +61,18 @@ public class PtabLambda implements RequestHandler<Object, String> {
         String user = "ptodev";
         String password = "Gia$2013";
 
-        ObjectMapper mapper = new ObjectMapper();
-        HttpClient client = HttpClient.newHttpClient();
+        ObjectMapper mapper = Resources.objectMapper();
+        ApiClient client = Resources.usptoApi();
+        client.setMetrics(metrics);
+        try {
+            Resources.pageCache().setMetrics(metrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         int startNumber = 0;
         int totalQuantity = 0;
-        boolean recordsAvailable = true;
-        Region region = Region.US_EAST_2;
-        DynamoDbClient ddb = DynamoDbClient.builder()
-                .region(region)
-                .build();
+        DynamoDbClient ddb = Resources.dynamoDb();
 
 
         Map<String, AttributeValue> item = getDynamoDBItem(ddb, "RejectionLambdaConfig", "ConfigName", "PTABLambdaConfig");
@@ -57,110 +84,192 @@ public class PtabLambda implements RequestHandler<Object, String> {
             throw new RuntimeException("No DDB entry");
         }
         System.out.print("startNumber = " + startNumber);
-        try (Connection con = DriverManager.getConnection(url, user, password)) {
-            while (recordsAvailable) {
-                // Read startNumber and totalQuantity from DynamoDB
-
-                String apiUrl = "https://developer.uspto.gov/ptab-api/proceedings?recordTotalQuantity=" + totalQuantity + "&recordStartNumber=" + startNumber;
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(apiUrl))
-                        .build();
-
-                // Send HTTP Request and Receive JSON Response
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                System.out.println("Response status code: " + response.statusCode());
-
-               // Parse JSON from the response body
-                JsonNode rootNode = mapper.readTree(response.body());
-                JsonNode results = rootNode.path("results");
-
-                if (results.isEmpty()) {
-                    recordsAvailable = false;
-                } else {
-                    // SQL statement for inserting data
-                    String sql = "INSERT INTO proceeding (proceedingFilingDate, proceedingStatusCategory, proceedingNumber, proceedingLastModifiedDate, " +
-                            "proceedingTypeCategory, subproceedingTypeCategory, respondentTechnologyCenterNumber, respondentPartyName, " +
-                            "respondentGroupArtUnitNumber, respondentApplicationNumberText, decisionDate, appellantTechnologyCenterNumber, " +
-                            "appellantPatentOwnerName, appellantPartyName, appellantGroupArtUnitNumber, appellantInventorName, " +
-                            "appellantCounselName, appellantApplicationNumberText, additionalRespondentPartyDataBag) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-                    PreparedStatement pstmt = con.prepareStatement(sql);
-
-                    // Iterate over the results array
-                    for (JsonNode node : results) {
-                        java.sql.Date proceedingFilingDate = node.path("proceedingFilingDate").asText() != null && !node.path("proceedingFilingDate").asText().isEmpty() ? getSQlDate(node.path("proceedingFilingDate").asText()) : null;
-                        pstmt.setDate(1, proceedingFilingDate);
-                        pstmt.setString(2, node.path("proceedingStatusCategory").asText());
-                        pstmt.setInt(3, node.path("proceedingNumber").asInt());
-                        pstmt.setDate(4, node.path("proceedingFilingDate").asText() != null && !node.path("proceedingLastModifiedDate").asText().isEmpty() ? getSQlDate(node.path("proceedingLastModifiedDate").asText()) : null);
-                        pstmt.setString(5, node.path("proceedingTypeCategory").asText());
-                        pstmt.setString(6, node.path("subproceedingTypeCategory").asText());
-                        pstmt.setInt(7, node.path("respondentTechnologyCenterNumber").asInt());
-                        pstmt.setString(8, node.path("respondentPartyName").asText());
-                        pstmt.setInt(9, node.path("respondentGroupArtUnitNumber").asInt());
-                        pstmt.setString(10, node.path("respondentApplicationNumberText").asText());
-                        pstmt.setDate(11, node.path("proceedingFilingDate").asText() != null && !node.path("decisionDate").asText().isEmpty() ? getSQlDate(node.path("decisionDate").asText()) : null);
-                        pstmt.setInt(12, node.path("appellantTechnologyCenterNumber").asInt());
-                        pstmt.setString(13, node.path("appellantPatentOwnerName").asText());
-                        pstmt.setString(14, node.path("appellantPartyName").asText());
-                        pstmt.setInt(15, node.path("appellantGroupArtUnitNumber").asInt());
-                        pstmt.setString(16, node.path("appellantInventorName").asText());
-                        pstmt.setString(17, node.path("appellantCounselName").asText());
-                        pstmt.setString(18, node.path("appellantApplicationNumberText").asText());
-                        pstmt.setArray(19, con.createArrayOf("text", new String[]{}));  // Assuming empty array
-                        pstmt.executeUpdate();
-                    }
-                    startNumber += totalQuantity;
-                    System.out.print("Records inserted" +totalQuantity);
+        boolean incremental = input instanceof Map<?, ?> options && "incremental".equals(options.get("mode"));
+        try {
+            Connection con = Resources.jdbcConnection(url, user, password);
+            if (incremental) {
+                LocalDate since = lastModifiedWatermark(con);
+                try (BulkLoader loader = newLoader(con)) {
+                    loader.setMetrics(metrics);
+                    long loaded = syncModifiedSince(client, mapper, loader, since, PageSizeController.fromEnvironment(totalQuantity, metrics));
+                    System.out.println("Records upserted " + loaded + " modified since " + since);
                 }
+                return "Success";
             }
-
-            // Update startNumber in DynamoDB
-            Map<String, AttributeValueUpdate> updates = new HashMap<>();
-            updates.put("StartNumber", AttributeValueUpdate.builder().value(AttributeValue.builder().n(Integer.toString(startNumber )).build()).build());
-            Map<String, AttributeValue> key = new HashMap<>();
-            key.put("ConfigName", AttributeValue.builder().s("PTABLambdaConfig").build());
-
-            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                    .tableName("RejectionLambdaConfig")
-                    .key(key)
-                    .attributeUpdates(updates)
-                    .build();
-
-            ddb.updateItem(updateItemRequest);
+            runFullSync(input, context, client, mapper, ddb, con, startNumber, totalQuantity);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
-            ddb.close();
+            metrics.flush();
         }
         return "Success";
     }
 
+    /**
+     * Pages the whole collection by recordStartNumber and upserts every record, either from the
+     * StartNumber kept in DynamoDB or, in sharded mode, through leased shards.
+     */
+    private void runFullSync(Object input, Context context, ApiClient client, ObjectMapper mapper, DynamoDbClient ddb,
+                             Connection con, int startNumber, int totalQuantity) throws Exception {
+        try (BulkLoader loader = newLoader(con)) {
+            loader.setMetrics(metrics);
+            PageSizeController pageSizes = PageSizeController.fromEnvironment(totalQuantity, metrics);
+            if (input instanceof Map<?, ?> options && "sharded".equals(options.get("mode"))) {
+                ShardLeaseManager leases = new ShardLeaseManager(ddb, ShardLeaseManager.DEFAULT_TABLE,
+                        "ptab_proceedings", context.getAwsRequestId(), intOption(options, "leaseSeconds", 120) * 1000L);
+                int end = intOption(options, "end", -1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("sharded mode needs an explicit end offset");
+                }
+                leases.ensureShards(intOption(options, "start", 0), end, intOption(options, "shardSize", totalQuantity * 100));
+                long loaded = leases.processShards(totalQuantity, loader,
+                        (offset, rows) -> stagePage(client, mapper, loader, offset, rows, "", pageSizes), context);
+                System.out.println("Records inserted " + loaded);
+                return;
+            }
+
+            int expectedStartNumber = startNumber;
+            startNumber = loadPages(client, mapper, loader, startNumber, "", pageSizes);
 
-    private static java.sql.Date getSQlDate (String date){
-        java.sql.Date sqlDate = null;
-        try {
-            // Define the format of the input date string
-            SimpleDateFormat sdf = new SimpleDateFormat("MM-dd-yyyy");
-            // Parse the string into java.util.Date
-            java.util.Date utilDate = sdf.parse(date);
-            // Convert java.util.Date to java.sql.Date
-            sqlDate = new java.sql.Date(utilDate.getTime());
+            // Update startNumber in DynamoDB
+            saveStartNumber(ddb, startNumber, expectedStartNumber);
+        }
+    }
 
-            // Output the converted date
-            System.out.println("Converted java.sql.Date: " + sqlDate);
+    /**
+     * Upserts on proceedingNumber, a text key (e.g. IPR2019-01234) that
+     * db/003_proceeding_number_unique.sql converts the column to and makes unique, so a
+     * page loaded twice or a proceeding seen again overwrites the stored row; within one page the
+     * most recently modified copy of a proceeding wins.
+     */
+    private static BulkLoader newLoader(Connection con) throws SQLException {
+        return new BulkLoader(con, "proceeding", PROCEEDING_COLUMNS, BulkLoader.modeFromEnvironment(),
+                "proceedingNumber", "proceedingLastModifiedDate");
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * The newest proceedingLastModifiedDate already stored, or null when the table is empty.
+     */
+    private static LocalDate lastModifiedWatermark(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT max(proceedingLastModifiedDate) FROM proceeding")) {
+            java.sql.Date watermark = rs.next() ? rs.getDate(1) : null;
+            return watermark == null ? null : watermark.toLocalDate();
         }
-        return sqlDate;
     }
 
-    private static  java.sql.Timestamp getSQLTimestamp(String timestampStr) {
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-        LocalDateTime dateTime = LocalDateTime.parse(timestampStr, formatter);
-        return Timestamp.valueOf(dateTime);
+    /**
+     * Upserts every proceeding modified on or after {@code since} (all of them when null). The
+     * watermark day itself is requested again because dates carry no time; rows already stored
+     * from it are simply overwritten.
+     */
+    private long syncModifiedSince(ApiClient client, ObjectMapper mapper, BulkLoader loader, LocalDate since,
+                                   PageSizeController pageSizes) throws Exception {
+        String filter = since == null ? ""
+                : "&" + LAST_MODIFIED_FROM_PARAMETER + "=" + since.format(LAST_MODIFIED_FROM_FORMAT);
+        return loadPages(client, mapper, loader, 0, filter, pageSizes);
+    }
+
+    /**
+     * Loads consecutive pages from {@code startNumber} until the API returns an empty one. Each
+     * page is sized by {@code pageSizes}, and a page whose response fails is retried smaller.
+     *
+     * @return the offset just past the last loaded record
+     */
+    private int loadPages(ApiClient client, ObjectMapper mapper, BulkLoader loader, int startNumber, String filter,
+                          PageSizeController pageSizes) throws Exception {
+        while (true) {
+            long records;
+            try {
+                records = fetchAndLoadPage(client, mapper, loader, startNumber, pageSizes.size(), filter, pageSizes);
+            } catch (IOException e) {
+                loader.discard();
+                // an ApiException is not retryable or has used up the client's own retries
+                if (e instanceof ApiClient.ApiException || !pageSizes.onError()) {
+                    throw e;
+                }
+                System.out.println("Page at " + startNumber + " failed (" + e.getMessage() + "), retrying");
+                continue;
+            }
+            if (records == 0) {
+                return startNumber;
+            }
+            // the page size varies, so move on by what was actually loaded
+            startNumber += (int) records;
+            System.out.print("Records inserted" + records);
+        }
+    }
+
+    /**
+     * Fetches a page and commits it.
+     *
+     * @param filter extra query parameters, each starting with '&amp;'
+     */
+    private long fetchAndLoadPage(ApiClient client, ObjectMapper mapper, BulkLoader loader, int startNumber,
+                                  int totalQuantity, String filter, PageSizeController pageSizes) throws Exception {
+        long records = stagePage(client, mapper, loader, startNumber, totalQuantity, filter, pageSizes);
+        loader.flush();
+        return records;
+    }
+
+    /**
+     * Streams the page's results into the loader, leaving the commit to the caller. The time until
+     * the page is parsed and its decompressed size are reported to {@code pageSizes}.
+     */
+    private long stagePage(ApiClient client, ObjectMapper mapper, BulkLoader loader, int startNumber,
+                           int totalQuantity, String filter, PageSizeController pageSizes) throws Exception {
+        String apiUrl = "https://developer.uspto.gov/ptab-api/proceedings?recordTotalQuantity=" + totalQuantity
+                + "&recordStartNumber=" + startNumber + filter;
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl))
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip, deflate")
+                .build();
+
+        // Send HTTP Request (or take the cached page) and stream the JSON response into the loader
+        long start = System.nanoTime();
+        PageCache.OpenedPage page = Resources.pageCache().open(client, request);
+        if (!page.fromCache()) {
+            metrics.time(Resources.pageCache().openLatencyMetric(), System.nanoTime() - start);
+        }
+
+        long records;
+        try (CountingInputStream body = new CountingInputStream(page.body())) {
+            records = JsonArrayStreamer.forEachRecord(mapper, body, parser -> PROCEEDING_BINDER.bind(parser, loader), "results");
+            if (!page.fromCache()) {
+                // a cached page says nothing about how the API copes with this page size
+                pageSizes.onSuccess(totalQuantity, records, System.nanoTime() - start, body.getCount());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Moves StartNumber forward only if it still holds the value this invocation started from, so an
+     * overlapping run fails loudly instead of silently overwriting the other run's progress.
+     */
+    private static void saveStartNumber(DynamoDbClient ddb, int startNumber, int expectedStartNumber) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("ConfigName", AttributeValue.builder().s("PTABLambdaConfig").build());
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":start", AttributeValue.builder().n(Integer.toString(startNumber)).build());
+        values.put(":expected", AttributeValue.builder().n(Integer.toString(expectedStartNumber)).build());
+
+        UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
+                .tableName("RejectionLambdaConfig")
+                .key(key)
+                .updateExpression("SET StartNumber = :start")
+                .conditionExpression("StartNumber = :expected")
+                .expressionAttributeValues(values)
+                .build();
+
+        ddb.updateItem(updateItemRequest);
+    }
+
+    private static int intOption(Map<?, ?> options, String name, int defaultValue) {
+        Object value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.toString());
     }
 
     public static Map<String, AttributeValue>  getDynamoDBItem(DynamoDbClient ddb, String tableName, String key, String keyVal) {
@@ -194,30 +303,4 @@ public class PtabLambda implements RequestHandler<Object, String> {
         }
         return returnedItem;
     }
-
-    public static HttpResponse.BodyHandler<String> gzipBodyHandler() {
-        return responseInfo -> {
-            HttpResponse.BodySubscriber<InputStream> original = HttpResponse.BodySubscribers.ofInputStream();
-            return HttpResponse.BodySubscribers.mapping(
-                    original,
-                    inputStream -> {
-                        if ("gzip".equalsIgnoreCase(responseInfo.headers().firstValue("Content-Encoding").orElse(""))) {
-                            try (GZIPInputStream gis = new GZIPInputStream(inputStream)) {
-                                return new String(gis.readAllBytes(), StandardCharsets.UTF_8);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        } else {
-                            try {
-                                return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    }
-            );
-        };
-    }
 }
-
-
@@ -0,0 +1,85 @@
+package example;
+
+/**
+ * Token bucket shared by every thread calling one API. Tokens refill at the current rate up to
+ * {@code burst}; {@link #acquire()} blocks until one is available.
+ * <p>
+ * The rate adapts to the server: a throttled response cuts it by a quarter (never below a tenth of
+ * the configured rate) and holds every caller back for the server's Retry-After, and each success
+ * wins back 1% of the configured rate. Sustained traffic therefore settles just under the limit
+ * the server enforces instead of oscillating through bursts of 429s.
+ */
+public class RateLimiter {
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+
+    private double rate;
+    private double tokens;
+    private long refilledAt;
+    private long pausedUntil;
+
+    /**
+     * @param permitsPerSecond configured (and highest) rate
+     * @param burst            most tokens that can be saved up
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+        this.maxRate = permitsPerSecond;
+        this.minRate = permitsPerSecond / 10;
+        this.burst = burst;
+        this.rate = permitsPerSecond;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+        this.pausedUntil = refilledAt;
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise how long to wait before trying again
+     */
+    private synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        if (now - pausedUntil < 0) {
+            return pausedUntil - now;
+        }
+        tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / rate * 1e9));
+    }
+
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + maxRate / 100);
+    }
+
+    /**
+     * Slows down after a 429 and keeps every caller waiting for at least {@code pauseMillis}.
+     */
+    public synchronized void onThrottled(long pauseMillis) {
+        rate = Math.max(minRate, rate * 0.75);
+        tokens = 0;
+        long until = System.nanoTime() + pauseMillis * 1_000_000;
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        // nothing is saved up during the pause, so it does not end in a burst
+        refilledAt = pausedUntil;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,269 @@
+package example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds JSON records to a {@link BulkLoader} from a declared column table instead of hand-written
+ * {@code node.path(..)} chains. Each column names the JSON field it is read from (which is also the
+ * SQL column name) and its type; the table is compiled once into a field-name lookup, and every
+ * record is then bound in a single pass over the parser's tokens without building a JsonNode.
+ * <p>
+ * Conversions follow what the JsonNode code did: a missing text field is "", a missing number 0
+ * and a missing boolean false; numbers given as strings are parsed. JSON nulls in text columns,
+ * and dates and timestamps that are missing or do not parse, are bound as NULL. Ints and booleans
+ * are held as primitives throughout.
+ * <pre>
+ *   static final RecordBinder BINDER = RecordBinder.builder()
+ *           .text("id")
+ *           .integer("groupArtUnitNumber")
+ *           .timestamp("submissionDate")
+ *           .build();
+ * </pre>
+ * The compiled binder is immutable; the per-record scratch space is per thread.
+ */
+public final class RecordBinder {
+
+    public enum Type {
+        TEXT, INT, BOOLEAN, DATE, TIMESTAMP, TEXT_ARRAY
+    }
+
+    private record Column(int index, String field, Type type, DateTimeFormatter format) {
+    }
+
+    /**
+     * Values of the record being bound, by column index: ints and booleans in {@code numbers},
+     * everything else in {@code objects}.
+     */
+    private static final class Row {
+        final long[] numbers;
+        final Object[] objects;
+        final boolean[] seen;
+
+        Row(int columns) {
+            numbers = new long[columns];
+            objects = new Object[columns];
+            seen = new boolean[columns];
+        }
+    }
+
+    private final Column[] columns;
+    private final Map<String, Column> byField;
+    private final String[] columnNames;
+    private final ThreadLocal<Row> rows;
+
+    private RecordBinder(List<Column> columns) {
+        this.columns = columns.toArray(new Column[0]);
+        this.byField = new HashMap<>(columns.size() * 2);
+        this.columnNames = new String[columns.size()];
+        for (Column column : columns) {
+            byField.put(column.field(), column);
+            columnNames[column.index()] = column.field();
+        }
+        this.rows = ThreadLocal.withInitial(() -> new Row(this.columns.length));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the column names in binding order, for the loader's column list
+     */
+    public String[] columns() {
+        return columnNames.clone();
+    }
+
+    /**
+     * Reads the object the parser is positioned on (its START_OBJECT) up to and including its
+     * END_OBJECT, and stages it as one row of {@code loader}. Fields without a column are skipped.
+     */
+    public void bind(JsonParser parser, BulkLoader loader) throws IOException, SQLException {
+        Row row = rows.get();
+        Arrays.fill(row.seen, false);
+        Arrays.fill(row.objects, null);
+
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            Column column = byField.get(parser.currentName());
+            JsonToken value = parser.nextToken();
+            if (column == null) {
+                parser.skipChildren();
+                continue;
+            }
+            read(parser, value, column, row);
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected " + token + " in record");
+        }
+
+        for (Column column : columns) {
+            int i = column.index();
+            switch (column.type()) {
+                case TEXT -> loader.setString(row.seen[i] ? (String) row.objects[i] : "");
+                case INT -> loader.setInt(row.seen[i] ? (int) row.numbers[i] : 0);
+                case BOOLEAN -> loader.setBoolean(row.seen[i] && row.numbers[i] != 0);
+                case DATE -> loader.setDate((LocalDate) row.objects[i]);
+                case TIMESTAMP -> loader.setTimestamp((LocalDateTime) row.objects[i]);
+                case TEXT_ARRAY -> loader.setTextArray(row.seen[i] && row.objects[i] != null ? (String[]) row.objects[i] : new String[0]);
+            }
+        }
+        loader.endRow();
+    }
+
+    private static void read(JsonParser parser, JsonToken value, Column column, Row row) throws IOException {
+        int i = column.index();
+        row.seen[i] = true;
+        switch (column.type()) {
+            case TEXT -> row.objects[i] = readText(parser, value);
+            case INT -> row.numbers[i] = readInt(parser, value);
+            case BOOLEAN -> row.numbers[i] = readBoolean(parser, value) ? 1 : 0;
+            case DATE -> row.objects[i] = value == JsonToken.VALUE_STRING ? parseDate(parser.getText(), column) : skipToNull(parser, value);
+            case TIMESTAMP -> row.objects[i] = value == JsonToken.VALUE_STRING ? parseTimestamp(parser.getText(), column) : skipToNull(parser, value);
+            case TEXT_ARRAY -> row.objects[i] = value == JsonToken.START_ARRAY ? readTextArray(parser) : skipToNull(parser, value);
+        }
+    }
+
+    private static String readText(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getText();
+    }
+
+    private static long readInt(JsonParser parser, JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT:
+                return parser.getValueAsInt();
+            case VALUE_STRING:
+                return parser.getValueAsInt(0);
+            default:
+                parser.skipChildren();
+                return 0;
+        }
+    }
+
+    private static boolean readBoolean(JsonParser parser, JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_TRUE:
+                return true;
+            case VALUE_NUMBER_INT:
+                return parser.getLongValue() != 0;
+            case VALUE_STRING:
+                return "true".equals(parser.getText().trim());
+            default:
+                parser.skipChildren();
+                return false;
+        }
+    }
+
+    private static String[] readTextArray(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    private static Object skipToNull(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isStructStart()) {
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private static LocalDate parseDate(String text, Column column) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text, column.format());
+        } catch (DateTimeParseException e) {
+            System.out.println("Binding unparseable " + column.field() + " '" + text + "' as NULL");
+            return null;
+        }
+    }
+
+    private static LocalDateTime parseTimestamp(String text, Column column) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text, column.format());
+        } catch (DateTimeParseException e) {
+            System.out.println("Binding unparseable " + column.field() + " '" + text + "' as NULL");
+            return null;
+        }
+    }
+
+    public static final class Builder {
+
+        /** Parses dates as the USPTO APIs send them, e.g. 04-11-2024; single-digit months and days are accepted. */
+        public static final DateTimeFormatter US_DATE = DateTimeFormatter.ofPattern("M-d-uuuu");
+
+        private final List<Column> columns = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder text(String field) {
+            return column(field, Type.TEXT, null);
+        }
+
+        public Builder integer(String field) {
+            return column(field, Type.INT, null);
+        }
+
+        public Builder bool(String field) {
+            return column(field, Type.BOOLEAN, null);
+        }
+
+        public Builder date(String field) {
+            return column(field, Type.DATE, US_DATE);
+        }
+
+        /**
+         * ISO-8601 date-time; a trailing offset such as "Z" is accepted and dropped.
+         */
+        public Builder timestamp(String field) {
+            return column(field, Type.TIMESTAMP, DateTimeFormatter.ISO_DATE_TIME);
+        }
+
+        public Builder textArray(String field) {
+            return column(field, Type.TEXT_ARRAY, null);
+        }
+
+        public Builder column(String field, Type type, DateTimeFormatter format) {
+            if ((type == Type.DATE || type == Type.TIMESTAMP) && format == null) {
+                throw new IllegalArgumentException(field + ": " + type + " columns need a format");
+            }
+            columns.add(new Column(columns.size(), field, type, format));
+            return this;
+        }
+
+        public RecordBinder build() {
+            return new RecordBinder(columns);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of parsed rows, so rows that are parsed but not yet in the database survive a
+ * database failure. One thread appends while another drains the log into the database; after a
+ * failure the log is drained again from the last committed offset, without fetching or parsing
+ * the dump a second time.
+ * <p>
+ * The file starts with an 8-byte header. Each record is {@code [int length][int crc32c][payload]}
+ * and its payload is {@code [short fieldCount]} followed by {@code [int byteLength][utf-8 bytes]}
+ * per field (-1 for null). A seal record (length -1) marks a log whose producer finished. When
+ * the log is opened again, a torn or corrupt tail fails its checksum and is cut off. The drained
+ * offset is kept in a {@code .pos} file next to the log. Replay is at-least-once: rows after the
+ * last committed offset may be written twice.
+ */
+public class RecordSpool implements AutoCloseable {
+
+    /**
+     * Receives each record together with the offset just past it.
+     */
+    public interface RecordHandler {
+        void accept(String[] fields, long endOffset) throws Exception;
+    }
+
+    private static final int MAGIC = 0x5053504C; // "PSPL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int SEAL_LENGTH = -1;
+    private static final int SEAL_CHECK = 0x5345414C; // "SEAL"
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final Path positionFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(1024);
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private final CRC32C crc = new CRC32C();
+
+    /** Bytes the channel holds; only this much is visible to {@link #drain}. */
+    private long published;
+    private boolean sealed;
+    private boolean abandoned;
+
+    private RecordSpool(Path file, FileChannel channel, long published, boolean sealed) {
+        this.file = file;
+        this.positionFile = file.resolveSibling(file.getFileName() + ".pos");
+        this.channel = channel;
+        this.published = published;
+        this.sealed = sealed;
+    }
+
+    /**
+     * Opens the log at {@code file}, creating it if needed. An existing log is checked record by
+     * record and cut off after the last intact one.
+     */
+    public static RecordSpool open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES || readInt(channel, 0) != MAGIC) {
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+                channel.write(header, 0);
+                return new RecordSpool(file, channel, HEADER_BYTES, false);
+            }
+            long end = HEADER_BYTES;
+            boolean sealed = false;
+            CRC32C crc = new CRC32C();
+            while (end + RECORD_HEADER_BYTES <= channel.size()) {
+                int length = readInt(channel, end);
+                int check = readInt(channel, end + 4);
+                if (length == SEAL_LENGTH && check == SEAL_CHECK) {
+                    end += RECORD_HEADER_BYTES;
+                    sealed = true;
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES || end + RECORD_HEADER_BYTES + length > channel.size()) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(channel, record, end + RECORD_HEADER_BYTES);
+                crc.reset();
+                crc.update(record.array());
+                if ((int) crc.getValue() != check) {
+                    break;
+                }
+                end += RECORD_HEADER_BYTES + length;
+            }
+            if (end < channel.size()) {
+                System.out.println("Cutting spool " + file + " from " + channel.size() + " to " + end + " bytes");
+                channel.truncate(end);
+            }
+            return new RecordSpool(file, channel, end, sealed);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public synchronized void append(String... fields) throws IOException {
+        if (sealed) {
+            throw new IllegalStateException("Spool " + file + " is sealed");
+        }
+        payload.reset();
+        payloadOut.writeShort(fields.length);
+        for (String field : fields) {
+            if (field == null) {
+                payloadOut.writeInt(-1);
+            } else {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                payloadOut.writeInt(bytes.length);
+                payloadOut.write(bytes);
+            }
+        }
+        int length = payload.size();
+        if (length > MAX_RECORD_BYTES) {
+            throw new IOException("Record of " + length + " bytes is too large to spool");
+        }
+        byte[] bytes = payload.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, length);
+
+        if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+            writeBuffer();
+        }
+        if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+            // larger than the buffer: goes straight to the channel
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+            record.putInt(length).putInt((int) crc.getValue()).put(bytes, 0, length).flip();
+            write(record);
+        } else {
+            buffer.putInt(length).putInt((int) crc.getValue()).put(bytes, 0, length);
+        }
+    }
+
+    /**
+     * Hands everything appended so far to the file, where {@link #drain} can see it.
+     */
+    public synchronized void flush() throws IOException {
+        writeBuffer();
+    }
+
+    /**
+     * Marks the log complete and forces it to disk; a sealed log can be replayed without parsing.
+     */
+    public synchronized void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        if (buffer.remaining() < RECORD_HEADER_BYTES) {
+            writeBuffer();
+        }
+        buffer.putInt(SEAL_LENGTH).putInt(SEAL_CHECK);
+        writeBuffer();
+        channel.force(false);
+        sealed = true;
+        notifyAll();
+    }
+
+    /**
+     * Tells a following {@link #drain} that no more records will come, without sealing the log.
+     */
+    public synchronized void abandon() {
+        abandoned = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Drops every record and the committed offset, for a log whose producer never finished.
+     */
+    public synchronized void reset() throws IOException {
+        buffer.clear();
+        channel.truncate(HEADER_BYTES);
+        published = HEADER_BYTES;
+        sealed = false;
+        abandoned = false;
+        Files.deleteIfExists(positionFile);
+    }
+
+    /**
+     * Hands every record from {@code from} to {@code handler}, waiting for more while the log is
+     * still being appended to, until the seal record or {@link #abandon()}.
+     *
+     * @return the offset just past the last record handed over
+     */
+    public long drain(long from, RecordHandler handler) throws Exception {
+        long position = from;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        while (true) {
+            if (!await(position + RECORD_HEADER_BYTES)) {
+                return position;
+            }
+            header.clear();
+            readFully(channel, header, position);
+            int length = header.getInt(0);
+            if (length == SEAL_LENGTH && header.getInt(4) == SEAL_CHECK) {
+                return position;
+            }
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                throw new IOException("Corrupt spool record at offset " + position + " of " + file);
+            }
+            if (!await(position + RECORD_HEADER_BYTES + length)) {
+                return position;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(channel, record, position + RECORD_HEADER_BYTES);
+            CRC32C check = new CRC32C();
+            check.update(record.array());
+            if ((int) check.getValue() != header.getInt(4)) {
+                throw new IOException("Checksum mismatch at offset " + position + " of " + file);
+            }
+            position += RECORD_HEADER_BYTES + length;
+            handler.accept(decode(record), position);
+        }
+    }
+
+    /**
+     * @return the offset up to which records have been committed downstream
+     */
+    public long committedOffset() throws IOException {
+        if (!Files.exists(positionFile)) {
+            return HEADER_BYTES;
+        }
+        return Math.max(HEADER_BYTES, Long.parseLong(Files.readString(positionFile).trim()));
+    }
+
+    public void commit(long offset) throws IOException {
+        Path tmp = positionFile.resolveSibling(positionFile.getFileName() + ".tmp");
+        Files.writeString(tmp, Long.toString(offset));
+        Files.move(tmp, positionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public synchronized long size() {
+        return published + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            abandoned = true;
+            notifyAll();
+        }
+        channel.close();
+    }
+
+    /**
+     * Closes the log and removes it along with its committed offset.
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(positionFile);
+    }
+
+    /**
+     * @return false if the log ended (sealed or abandoned) before {@code end} bytes were published
+     */
+    private synchronized boolean await(long end) throws InterruptedException {
+        while (published < end) {
+            if (sealed || abandoned) {
+                return false;
+            }
+            wait();
+        }
+        return true;
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            published += channel.write(bytes, published);
+        }
+        notifyAll();
+    }
+
+    private static String[] decode(ByteBuffer record) {
+        int count = record.getShort(0);
+        String[] fields = new String[count];
+        int position = 2;
+        for (int i = 0; i < count; i++) {
+            int length = record.getInt(position);
+            position += 4;
+            if (length >= 0) {
+                fields[i] = new String(record.array(), position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+        }
+        return fields;
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(4);
+        readFully(channel, bytes, position);
+        return bytes.getInt(0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            int read = channel.read(bytes, position + bytes.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of spool");
+            }
+        }
+    }
+}
@@ -2,34 +2,63 @@ package example;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RejectionLambda implements RequestHandler<Object, String> {
 
+    static final RecordBinder REJECTION_BINDER = RecordBinder.builder()
+            .text("id")
+            .text("patentApplicationNumber")
+            .text("obsoleteDocumentIdentifier")
+            .integer("groupArtUnitNumber")
+            .text("legacyDocumentCodeIdentifier")
+            .timestamp("submissionDate")
+            .integer("nationalClass")
+            .text("nationalSubclass")
+            .bool("headerMissing")
+            .bool("formParagraphMissing")
+            .bool("rejectFormMissmatch")
+            .bool("closingMissing")
+            .bool("hasRej101")
+            .bool("hasRejDP")
+            .bool("hasRej102")
+            .bool("hasRej103")
+            .bool("hasRej112")
+            .bool("hasObjection")
+            .bool("cite102GT1")
+            .bool("cite103GT3")
+            .bool("cite103EQ1")
+            .integer("cite103Max")
+            .integer("signatureType")
+            .text("actionTypeCategory")
+            .text("legalSectionCode")
+            .build();
+
+    static final String[] REJECTION_COLUMNS = REJECTION_BINDER.columns();
+
+    private final Metrics metrics = Metrics.forHandler("RejectionLambda");
 
     @Override
     public String handleRequest(Object input, Context context) {
@@ -37,16 +66,19 @@ public class RejectionLambda implements RequestHandler<Object, String> {
         String user = "ptodev";
         String password = "Gia$2013";
 
-        ObjectMapper mapper = new ObjectMapper();
-        HttpClient client = HttpClient.newHttpClient();
+        ObjectMapper mapper = Resources.objectMapper();
+        ApiClient client = Resources.usptoApi();
+        client.setMetrics(metrics);
+        try {
+            Resources.pageCache().setMetrics(metrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         int startNumber = 0;
         int totalQuantity = 0;
         boolean recordsAvailable = true;
-        Region region = Region.US_EAST_2;
-        DynamoDbClient ddb = DynamoDbClient.builder()
-                .region(region)
-                .build();
+        DynamoDbClient ddb = Resources.dynamoDb();
 
 
         Map<String, AttributeValue> item = getDynamoDBItem(ddb, "RejectionLambdaConfig", "ConfigName", "RejectionLambdaConfig");
@@ -58,126 +90,311 @@ public class RejectionLambda implements RequestHandler<Object, String> {
             throw new RuntimeException("No DDB entry");
         }
         System.out.print("startNumber = " + startNumber);
-        try (Connection con = DriverManager.getConnection(url, user, password)) {
+        try (BulkLoader loader = newLoader(Resources.jdbcConnection(url, user, password))) {
+            loader.setMetrics(metrics);
+            PageSizeController pageSizes = PageSizeController.fromEnvironment(totalQuantity, metrics);
+            if (input instanceof Map<?, ?> options && "backfill".equals(options.get("mode"))) {
+                int start = intOption(options, "start", startNumber);
+                int end = intOption(options, "end", Integer.MAX_VALUE);
+                int concurrency = intOption(options, "concurrency", 8);
+                backfill(client, mapper, loader, ddb, start, end, totalQuantity, concurrency);
+                return "Success";
+            }
+
+            if (input instanceof Map<?, ?> options && "sharded".equals(options.get("mode"))) {
+                ShardLeaseManager leases = new ShardLeaseManager(ddb, ShardLeaseManager.DEFAULT_TABLE,
+                        "oa_rejections", context.getAwsRequestId(), intOption(options, "leaseSeconds", 120) * 1000L);
+                int end = intOption(options, "end", -1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("sharded mode needs an explicit end offset");
+                }
+                leases.ensureShards(intOption(options, "start", 0), end, intOption(options, "shardSize", totalQuantity * 100));
+                long loaded = leases.processShards(totalQuantity, loader,
+                        (offset, rows) -> stagePage(client, mapper, loader, offset, rows, pageSizes), context);
+                System.out.println("Records inserted " + loaded);
+                return "Success";
+            }
+
+            int expectedStartNumber = startNumber;
             while (recordsAvailable) {
-                // Read startNumber and totalQuantity from DynamoDB
-
-                String apiUrl = "https://developer.uspto.gov/ds-api/oa_rejections/v2/records";
-                // Prepare the URL-encoded form data
-                String formData = "criteria=" + URLEncoder.encode("*:*", StandardCharsets.UTF_8.toString()) +
-                        "&start=" + URLEncoder.encode(String.valueOf(startNumber), StandardCharsets.UTF_8.toString()) +
-                        "&rows=" + URLEncoder.encode(String.valueOf(totalQuantity), StandardCharsets.UTF_8.toString());
-
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(apiUrl))
-                        .header("Content-Type", "application/x-www-form-urlencoded")
-                        .header("Accept", "application/json")
-                        .header("Accept-Encoding", "gzip, deflate")
-                        .POST(HttpRequest.BodyPublishers.ofString(formData))
-                        .build();
-
-                // Send the POST request
-                HttpResponse response = client.send(request, gzipBodyHandler());
-                System.out.println("Response status code: " + response.statusCode());
-
-                //String responseString = new BasicResponseHandler().handleResponse(response);
-                //System.out.println(response.body());
-                // Parse JSON from the response body
-                String content = response.body().toString();
-
-                JsonNode rootNode = mapper.readTree(content);
-                JsonNode results = rootNode.path("response").path("docs");
-
-                if (results.isEmpty() ) {
+                int pageSize = pageSizes.size();
+                long loaded;
+                try {
+                    loaded = fetchAndLoadPage(client, mapper, loader, startNumber, pageSize, pageSizes);
+                } catch (IOException e) {
+                    loader.discard();
+                    // an ApiException is not retryable or has used up the client's own retries
+                    if (e instanceof ApiClient.ApiException || !pageSizes.onError()) {
+                        throw e;
+                    }
+                    System.out.println("Page at " + startNumber + " failed (" + e.getMessage() + "), retrying");
+                    continue;
+                }
+                if (loaded == 0) {
                     recordsAvailable = false;
                 } else {
-                    // SQL statement for inserting data
-                    String sql = "INSERT INTO rejections (id, patentApplicationNumber, obsoleteDocumentIdentifier, groupArtUnitNumber, legacyDocumentCodeIdentifier, submissionDate, nationalClass, " +
-                            "nationalSubclass, headerMissing, formParagraphMissing, rejectFormMissmatch, closingMissing, hasRej101, hasRejDP, hasRej102, hasRej103, hasRej112, hasObjection, cite102GT1, " +
-                            "cite103GT3, cite103EQ1, cite103Max, signatureType, actionTypeCategory, legalSectionCode) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-                    PreparedStatement pstmt = con.prepareStatement(sql);
-
-                    // Iterate over the results array
-                    for (JsonNode node : results) {
-                        pstmt.setString(1, node.path("id").asText());
-                        pstmt.setString(2, node.path("patentApplicationNumber").asText());
-                        pstmt.setString(3, node.path("obsoleteDocumentIdentifier").asText());
-                        pstmt.setInt(4, node.path("groupArtUnitNumber").asInt());
-                        pstmt.setString(5, node.path("legacyDocumentCodeIdentifier").asText());
-                        pstmt.setTimestamp(6, getSQLTimestamp(node.path("submissionDate").asText().replace("Z", "")));
-                        pstmt.setInt(7, node.path("nationalClass").asInt());
-                        pstmt.setString(8, node.path("nationalSubclass").asText());
-                        pstmt.setBoolean(9, node.path("headerMissing").asBoolean());
-                        pstmt.setBoolean(10, node.path("formParagraphMissing").asBoolean());
-                        pstmt.setBoolean(11, node.path("rejectFormMissmatch").asBoolean());
-                        pstmt.setBoolean(12, node.path("closingMissing").asBoolean());
-                        pstmt.setBoolean(13, node.path("hasRej101").asBoolean());
-                        pstmt.setBoolean(14, node.path("hasRejDP").asBoolean());
-                        pstmt.setBoolean(15, node.path("hasRej102").asBoolean());
-                        pstmt.setBoolean(16, node.path("hasRej103").asBoolean());
-                        pstmt.setBoolean(17, node.path("hasRej112").asBoolean());
-                        pstmt.setBoolean(18, node.path("hasObjection").asBoolean());
-                        pstmt.setBoolean(19, node.path("cite102GT1").asBoolean());
-                        pstmt.setBoolean(20, node.path("cite103GT3").asBoolean());
-                        pstmt.setBoolean(21, node.path("cite103EQ1").asBoolean());
-                        pstmt.setInt(22, node.path("cite103Max").asInt());
-                        pstmt.setInt(23, node.path("signatureType").asInt());
-                        pstmt.setString(24, node.path("actionTypeCategory").asText());
-                        pstmt.setString(25, node.path("legalSectionCode").asText());
-                        pstmt.executeUpdate();
-                    }
-                    startNumber += totalQuantity;
-                    System.out.print("Records inserted" +totalQuantity);
+                    // the page size varies, so move on by what was actually loaded
+                    startNumber += (int) loaded;
+                    System.out.print("Records inserted" + loaded);
                 }
             }
 
             // Update startNumber in DynamoDB
-            Map<String, AttributeValueUpdate> updates = new HashMap<>();
-            updates.put("StartNumber", AttributeValueUpdate.builder().value(AttributeValue.builder().n(Integer.toString(startNumber )).build()).build());
-            Map<String, AttributeValue> key = new HashMap<>();
-            key.put("ConfigName", AttributeValue.builder().s("RejectionLambdaConfig").build());
-
-            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                    .tableName("RejectionLambdaConfig")
-                    .key(key)
-                    .attributeUpdates(updates)
-                    .build();
-
-            ddb.updateItem(updateItemRequest);
+            saveStartNumber(ddb, startNumber, expectedStartNumber);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
-            ddb.close();
+            metrics.flush();
         }
         return "Success";
     }
 
 
-    private static java.sql.Date getSQlDate (String date){
-        java.sql.Date sqlDate = null;
+    /**
+     * Backfill mode: the [start, end) offset space is cut into pages of {@code pageSize} and up to
+     * {@code concurrency} pages are fetched at once. Pages are loaded as soon as they arrive, in any
+     * order, but the checkpoint only advances over the contiguous prefix of loaded pages, so a crash
+     * replays pages past it instead of skipping them.
+     * <p>
+     * The checkpoint is kept in its own RejectionLambdaConfig item per [start, end) range, and a
+     * rerun of the same range resumes from it. StartNumber, the incremental run's cursor, is only
+     * ever moved forward: when the backfilled range started at or before it and got past it.
+     * <p>
+     * The page size stays fixed, as in sharded mode: offsets are handed out ahead of the responses,
+     * so a size the API turned out not to serve could not be taken back. A page that still comes
+     * back short is taken as the API's limit and the rest of its range is fetched again.
+     */
+    private void backfill(ApiClient client, ObjectMapper mapper, BulkLoader loader, DynamoDbClient ddb,
+                          int start, int end, int pageSize, int concurrency) throws Exception {
+        String checkpointName = "RejectionBackfill#" + start + "-" + end;
+        Map<String, AttributeValue> saved = getDynamoDBItem(ddb, "RejectionLambdaConfig", "ConfigName", checkpointName);
+        Integer savedWatermark = saved != null && saved.containsKey("Watermark") ? Integer.valueOf(saved.get("Watermark").n()) : null;
+        int resumeFrom = savedWatermark == null ? start : savedWatermark;
+        if (savedWatermark != null) {
+            System.out.println("Resuming backfill of [" + start + ", " + end + ") at " + resumeFrom);
+        }
+
+        // platform threads: the runtime is Java 17, which has no virtual threads; the workers block
+        // on HTTP and only hold a compressed page each, so a small fixed pool does the same job
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        CompletionService<Page> completionService = new ExecutorCompletionService<>(executor);
+        ContiguousCheckpoint checkpoint = new ContiguousCheckpoint(resumeFrom);
+        Deque<int[]> shortfalls = new ArrayDeque<>();
+        int nextOffset = resumeFrom;
+        int inFlight = 0;
+        boolean endReached = false;
         try {
-            // Define the format of the input date string
-            SimpleDateFormat sdf = new SimpleDateFormat("MM-dd-yyyy");
-            // Parse the string into java.util.Date
-            java.util.Date utilDate = sdf.parse(date);
-            // Convert java.util.Date to java.sql.Date
-            sqlDate = new java.sql.Date(utilDate.getTime());
+            while (true) {
+                while (!endReached && inFlight < concurrency && (!shortfalls.isEmpty() || nextOffset < end)) {
+                    int offset;
+                    int pageRows;
+                    if (!shortfalls.isEmpty()) {
+                        int[] range = shortfalls.poll();
+                        offset = range[0];
+                        pageRows = range[1] - range[0];
+                    } else {
+                        offset = nextOffset;
+                        pageRows = (int) Math.min(pageSize, (long) end - offset);
+                        nextOffset += pageRows;
+                    }
+                    completionService.submit(() -> fetchPage(client, offset, pageRows));
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    break;
+                }
 
-            // Output the converted date
-            System.out.println("Converted java.sql.Date: " + sqlDate);
+                Page page = completionService.take().get();
+                inFlight--;
+                long loaded;
+                try (InputStream body = DecompressingBodyHandler.decode(new ByteArrayInputStream(page.body), page.contentEncoding)) {
+                    loaded = loadPage(loader, mapper, body);
+                }
+                int done = page.rows;
+                if (loaded == 0) {
+                    // past the end of the collection; stop issuing pages beyond this one
+                    endReached = true;
+                    end = Math.min(end, page.offset);
+                } else {
+                    System.out.println("Records inserted " + loaded + " at offset " + page.offset);
+                    if (loaded < page.rows && page.offset + loaded < end) {
+                        done = (int) loaded;
+                        shortfalls.add(new int[]{page.offset + done, page.offset + page.rows});
+                        System.out.println("Short page at " + page.offset + ", fetching [" + (page.offset + done)
+                                + ", " + (page.offset + page.rows) + ") again");
+                    }
+                }
+                if (checkpoint.complete(page.offset, page.offset + done)) {
+                    int watermark = (int) Math.min(checkpoint.getWatermark(), end);
+                    saveBackfillWatermark(ddb, checkpointName, watermark, savedWatermark);
+                    savedWatermark = watermark;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int finished = (int) Math.min(checkpoint.getWatermark(), end);
+        System.out.println("Backfill finished at offset " + finished);
+        advanceStartNumber(ddb, start, finished);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Records a backfill range's watermark, only over the value this invocation last saw, so two
+     * runs of the same range cannot both advance it.
+     */
+    private static void saveBackfillWatermark(DynamoDbClient ddb, String checkpointName, int watermark, Integer expected) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("ConfigName", AttributeValue.builder().s(checkpointName).build());
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":watermark", AttributeValue.builder().n(Integer.toString(watermark)).build());
+        if (expected != null) {
+            values.put(":expected", AttributeValue.builder().n(Integer.toString(expected)).build());
+        }
+        ddb.updateItem(UpdateItemRequest.builder()
+                .tableName("RejectionLambdaConfig")
+                .key(key)
+                .updateExpression("SET Watermark = :watermark")
+                .conditionExpression(expected == null ? "attribute_not_exists(Watermark)" : "Watermark = :expected")
+                .expressionAttributeValues(values)
+                .build());
+    }
+
+    /**
+     * Moves StartNumber up to {@code watermark} if a backfill that began at {@code start} (at or
+     * before StartNumber) has loaded everything past it; otherwise leaves it alone.
+     */
+    private static void advanceStartNumber(DynamoDbClient ddb, int start, int watermark) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("ConfigName", AttributeValue.builder().s("RejectionLambdaConfig").build());
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":start", AttributeValue.builder().n(Integer.toString(start)).build());
+        values.put(":watermark", AttributeValue.builder().n(Integer.toString(watermark)).build());
+        try {
+            ddb.updateItem(UpdateItemRequest.builder()
+                    .tableName("RejectionLambdaConfig")
+                    .key(key)
+                    .updateExpression("SET StartNumber = :watermark")
+                    .conditionExpression("StartNumber >= :start AND StartNumber < :watermark")
+                    .expressionAttributeValues(values)
+                    .build());
+            System.out.println("StartNumber moved forward to " + watermark);
+        } catch (ConditionalCheckFailedException e) {
+            // StartNumber is already past the backfill, or before it with a gap in between
+        }
+    }
+
+    /**
+     * Upserts on id, which db/006_rejections_id_unique.sql makes unique: a backfill resuming from
+     * its contiguous watermark loads again the pages that were already committed past it, and a
+     * sequential run may repeat the page it was on when it stopped.
+     */
+    private static BulkLoader newLoader(Connection con) throws SQLException {
+        return new BulkLoader(con, "rejections", REJECTION_COLUMNS, BulkLoader.modeFromEnvironment(), "id");
+    }
+
+    /**
+     * A fetched page is held compressed until the loader gets to it, which keeps the in-flight
+     * window cheap.
+     */
+    private record Page(int offset, int rows, byte[] body, String contentEncoding) {
+    }
+
+    private Page fetchPage(ApiClient client, int startNumber, int totalQuantity) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        PageCache.Page page = Resources.pageCache().fetch(client, pageRequest(startNumber, totalQuantity));
+        if (!page.fromCache()) {
+            // the whole body, unlike the time to headers of the streaming path
+            metrics.time("ApiPageFetchLatency", System.nanoTime() - start);
+            metrics.count("ApiPageBytes", page.body().length);
         }
-        return sqlDate;
+        return new Page(startNumber, totalQuantity, page.body(), page.contentEncoding());
     }
 
-    private static  java.sql.Timestamp getSQLTimestamp(String timestampStr) {
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-        LocalDateTime dateTime = LocalDateTime.parse(timestampStr, formatter);
-        return Timestamp.valueOf(dateTime);
+    private static HttpRequest pageRequest(int startNumber, int totalQuantity) {
+        String apiUrl = "https://developer.uspto.gov/ds-api/oa_rejections/v2/records";
+        // Prepare the URL-encoded form data
+        String formData = "criteria=" + URLEncoder.encode("*:*", StandardCharsets.UTF_8) +
+                "&start=" + URLEncoder.encode(String.valueOf(startNumber), StandardCharsets.UTF_8) +
+                "&rows=" + URLEncoder.encode(String.valueOf(totalQuantity), StandardCharsets.UTF_8);
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip, deflate")
+                .POST(HttpRequest.BodyPublishers.ofString(formData))
+                .build();
+    }
+
+    /**
+     * Fetches a page and commits it.
+     *
+     * @return number of records on the page
+     */
+    private long fetchAndLoadPage(ApiClient client, ObjectMapper mapper, BulkLoader loader, int startNumber, int totalQuantity,
+                                  PageSizeController pageSizes) throws Exception {
+        long records = stagePage(client, mapper, loader, startNumber, totalQuantity, pageSizes);
+        loader.flush();
+        return records;
+    }
+
+    /**
+     * Streams {@code response.docs} straight into the loader one record at a time, leaving the
+     * commit to the caller. The time until the page is parsed and its decompressed size are
+     * reported to {@code pageSizes}.
+     *
+     * @return number of records on the page
+     */
+    private long stagePage(ApiClient client, ObjectMapper mapper, BulkLoader loader, int startNumber, int totalQuantity,
+                           PageSizeController pageSizes) throws Exception {
+        long start = System.nanoTime();
+        PageCache.OpenedPage page = Resources.pageCache().open(client, pageRequest(startNumber, totalQuantity));
+        if (!page.fromCache()) {
+            metrics.time(Resources.pageCache().openLatencyMetric(), System.nanoTime() - start);
+        }
+
+        long records;
+        try (CountingInputStream body = new CountingInputStream(page.body())) {
+            records = JsonArrayStreamer.forEachRecord(mapper, body, parser -> REJECTION_BINDER.bind(parser, loader), "response", "docs");
+            if (!page.fromCache()) {
+                pageSizes.onSuccess(totalQuantity, records, System.nanoTime() - start, body.getCount());
+            }
+        }
+        return records;
+    }
+
+    private long loadPage(BulkLoader loader, ObjectMapper mapper, InputStream body) throws Exception {
+        long records = JsonArrayStreamer.forEachRecord(mapper, body, parser -> REJECTION_BINDER.bind(parser, loader), "response", "docs");
+        loader.flush();
+        return records;
+    }
+
+    /**
+     * Moves StartNumber forward only if it still holds the value this invocation started from, so an
+     * overlapping run fails loudly instead of silently overwriting the other run's progress.
+     */
+    private static void saveStartNumber(DynamoDbClient ddb, int startNumber, int expectedStartNumber) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("ConfigName", AttributeValue.builder().s("RejectionLambdaConfig").build());
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":start", AttributeValue.builder().n(Integer.toString(startNumber)).build());
+        values.put(":expected", AttributeValue.builder().n(Integer.toString(expectedStartNumber)).build());
+
+        UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
+                .tableName("RejectionLambdaConfig")
+                .key(key)
+                .updateExpression("SET StartNumber = :start")
+                .conditionExpression("StartNumber = :expected")
+                .expressionAttributeValues(values)
+                .build();
+
+        ddb.updateItem(updateItemRequest);
+    }
+
+    private static int intOption(Map<?, ?> options, String name, int defaultValue) {
+        Object value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.toString());
     }
 
     public static Map<String, AttributeValue>  getDynamoDBItem(DynamoDbClient ddb, String tableName, String key, String keyVal) {
@@ -211,29 +428,4 @@ public class RejectionLambda implements RequestHandler<Object, String> {
         }
         return returnedItem;
     }
-
-    public static HttpResponse.BodyHandler<String> gzipBodyHandler() {
-        return responseInfo -> {
-            HttpResponse.BodySubscriber<InputStream> original = HttpResponse.BodySubscribers.ofInputStream();
-            return HttpResponse.BodySubscribers.mapping(
-                    original,
-                    inputStream -> {
-                        if ("gzip".equalsIgnoreCase(responseInfo.headers().firstValue("Content-Encoding").orElse(""))) {
-                            try (GZIPInputStream gis = new GZIPInputStream(inputStream)) {
-                                return new String(gis.readAllBytes(), StandardCharsets.UTF_8);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        } else {
-                            try {
-                                return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    }
-            );
-        };
-    }
 }
-
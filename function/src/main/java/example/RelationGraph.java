@@ -0,0 +1,390 @@
+package example;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Continuity links between applications (continuation, division, provisional, ...) as a compact
+ * adjacency index, so a family tree is walked in memory instead of with recursive SQL.
+ * <p>
+ * Applications are keyed by their normalized number (see {@link #normalize}) and held once in a
+ * sorted {@code long[]}; every other array refers to them by position. Parent and child edges
+ * are stored CSR style: for node {@code i}, positions {@code start[i]} to {@code start[i + 1]}
+ * of the target and type arrays. Relation types are interned into a small table and stored as
+ * bytes. The graph is immutable; {@link Builder} collects edges and {@link Builder#build()}
+ * sorts and deduplicates them.
+ * <p>
+ * Snapshots are kept on local disk and optionally in S3, like {@link ApplicationIdIndex}. The
+ * applications_relations table stays the source of truth: a snapshot records the last edge id it
+ * has seen ({@link #syncedEdgeId()}) and its loader catches up on newer rows, so a snapshot that
+ * one container overwrites with another's only costs a longer catch-up.
+ */
+public final class RelationGraph {
+
+    public record Edge(long applicationId, long relatedId, String relationType) {
+    }
+
+    private static final int MAGIC = 0x52454C32; // "REL2"
+
+    private final long[] nodes;
+    private final int[] parentStart;
+    private final int[] parents;
+    private final byte[] parentTypes;
+    private final int[] childStart;
+    private final int[] children;
+    private final byte[] childTypes;
+    private final String[] types;
+    private final long syncedEdgeId;
+
+    private RelationGraph(long[] nodes, int[] parentStart, int[] parents, byte[] parentTypes,
+                          int[] childStart, int[] children, byte[] childTypes, String[] types, long syncedEdgeId) {
+        this.nodes = nodes;
+        this.parentStart = parentStart;
+        this.parents = parents;
+        this.parentTypes = parentTypes;
+        this.childStart = childStart;
+        this.children = children;
+        this.childTypes = childTypes;
+        this.types = types;
+        this.syncedEdgeId = syncedEdgeId;
+    }
+
+    public static RelationGraph empty() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return the digits of an application number (e.g. "US 12/345,678" becomes 12345678), or -1
+     * if there are none or too many
+     */
+    public static long normalize(String applicationNumber) {
+        if (applicationNumber == null) {
+            return -1;
+        }
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < applicationNumber.length(); i++) {
+            char c = applicationNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 18) {
+                    return -1;
+                }
+                key = key * 10 + (c - '0');
+            }
+        }
+        return digits == 0 ? -1 : key;
+    }
+
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public int edgeCount() {
+        return parents.length;
+    }
+
+    /**
+     * @return the highest applications_relations id the graph was caught up to, or 0
+     */
+    public long syncedEdgeId() {
+        return syncedEdgeId;
+    }
+
+    /**
+     * @return the applications {@code applicationId} continues, divides from or claims priority to
+     */
+    public List<Edge> parents(long applicationId) {
+        return edges(applicationId, parentStart, parents, parentTypes, false);
+    }
+
+    /**
+     * @return the applications that name {@code applicationId} as their parent
+     */
+    public List<Edge> children(long applicationId) {
+        return edges(applicationId, childStart, children, childTypes, true);
+    }
+
+    /**
+     * Every application linked to {@code applicationId} through any chain of continuity links in
+     * either direction, the application itself first, in breadth-first order.
+     *
+     * @param maxNodes stops the walk once this many applications are found
+     */
+    public long[] family(long applicationId, int maxNodes) {
+        int root = Arrays.binarySearch(nodes, applicationId);
+        if (root < 0) {
+            return new long[0];
+        }
+        int[] queue = new int[Math.min(maxNodes, 64)];
+        LongOpenHashSet seen = new LongOpenHashSet(64);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        seen.add(root);
+        while (head < tail && tail < maxNodes) {
+            int node = queue[head++];
+            for (int pass = 0; pass < 2 && tail < maxNodes; pass++) {
+                int[] start = pass == 0 ? parentStart : childStart;
+                int[] targets = pass == 0 ? parents : children;
+                for (int e = start[node]; e < start[node + 1] && tail < maxNodes; e++) {
+                    if (seen.add(targets[e])) {
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, Math.min(maxNodes, queue.length * 2));
+                        }
+                        queue[tail++] = targets[e];
+                    }
+                }
+            }
+        }
+        long[] family = new long[tail];
+        for (int i = 0; i < tail; i++) {
+            family[i] = nodes[queue[i]];
+        }
+        return family;
+    }
+
+    /**
+     * Loads the local snapshot if there is one, otherwise the S3 snapshot if a bucket is given,
+     * otherwise starts empty.
+     */
+    public static RelationGraph load(Path localPath, S3Client s3Client, String bucket, String key) {
+        try {
+            if (Files.exists(localPath)) {
+                try (InputStream in = Files.newInputStream(localPath)) {
+                    return read(in);
+                }
+            }
+            if (bucket != null) {
+                try (InputStream in = s3Client.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build())) {
+                    return read(in);
+                } catch (NoSuchKeyException e) {
+                    System.out.println("No relation graph snapshot at s3://" + bucket + "/" + key);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable relation graph snapshot: " + e.getMessage());
+        }
+        return empty();
+    }
+
+    public void save(Path localPath, S3Client s3Client, String bucket, String key) throws IOException {
+        Path tmp = localPath.resolveSibling(localPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            writeTo(out);
+        }
+        Files.move(tmp, localPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (bucket != null) {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromFile(localPath));
+        }
+        System.out.println("Saved relation graph with " + nodeCount() + " applications and " + edgeCount() + " links");
+    }
+
+    /**
+     * Only the parent side is written; the child side is rebuilt on load.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(syncedEdgeId);
+        out.writeInt(types.length);
+        for (String type : types) {
+            out.writeUTF(type);
+        }
+        out.writeInt(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            out.writeLong(nodes[i]);
+        }
+        out.writeInt(parents.length);
+        for (int node = 0; node < nodes.length; node++) {
+            for (int e = parentStart[node]; e < parentStart[node + 1]; e++) {
+                out.writeInt(node);
+                out.writeInt(parents[e]);
+                out.writeByte(parentTypes[e]);
+            }
+        }
+    }
+
+    private static RelationGraph read(InputStream raw) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a relation graph snapshot");
+        }
+        long syncedEdgeId = in.readLong();
+        String[] types = new String[in.readInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = in.readUTF();
+        }
+        long[] nodes = new long[in.readInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = in.readLong();
+        }
+        Builder builder = new Builder();
+        builder.syncedTo(syncedEdgeId);
+        int edges = in.readInt();
+        for (int i = 0; i < edges; i++) {
+            long from = nodes[in.readInt()];
+            long to = nodes[in.readInt()];
+            builder.add(from, to, types[in.readByte()]);
+        }
+        RelationGraph graph = builder.build();
+        System.out.println("Loaded relation graph with " + graph.nodeCount() + " applications and " + graph.edgeCount() + " links");
+        return graph;
+    }
+
+    private List<Edge> edges(long applicationId, int[] start, int[] targets, byte[] edgeTypes, boolean reversed) {
+        int node = Arrays.binarySearch(nodes, applicationId);
+        if (node < 0) {
+            return List.of();
+        }
+        List<Edge> edges = new ArrayList<>(start[node + 1] - start[node]);
+        for (int e = start[node]; e < start[node + 1]; e++) {
+            long other = nodes[targets[e]];
+            String type = types[edgeTypes[e]];
+            edges.add(reversed ? new Edge(other, applicationId, type) : new Edge(applicationId, other, type));
+        }
+        return edges;
+    }
+
+    /**
+     * Collects child-to-parent links in primitive arrays. Thread-safe.
+     */
+    public static final class Builder {
+
+        private long[] from = new long[1024];
+        private long[] to = new long[1024];
+        private byte[] type = new byte[1024];
+        private int size;
+        private final List<String> types = new ArrayList<>();
+        private long syncedEdgeId;
+
+        public Builder() {
+        }
+
+        public Builder(RelationGraph graph) {
+            syncedEdgeId = graph.syncedEdgeId;
+            for (int node = 0; node < graph.nodes.length; node++) {
+                for (int e = graph.parentStart[node]; e < graph.parentStart[node + 1]; e++) {
+                    add(graph.nodes[node], graph.nodes[graph.parents[e]], graph.types[graph.parentTypes[e]]);
+                }
+            }
+        }
+
+        /**
+         * Records that {@code applicationId} is a {@code relationType} of {@code parentId}. Links with a
+         * negative (unnormalizable) end or to itself are ignored.
+         */
+        public synchronized void add(long applicationId, long parentId, String relationType) {
+            if (applicationId < 0 || parentId < 0 || applicationId == parentId) {
+                return;
+            }
+            int typeIndex = types.indexOf(relationType);
+            if (typeIndex < 0) {
+                if (types.size() == 128) {
+                    throw new IllegalStateException("Too many relation types");
+                }
+                typeIndex = types.size();
+                types.add(relationType);
+            }
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                type = Arrays.copyOf(type, size * 2);
+            }
+            from[size] = applicationId;
+            to[size] = parentId;
+            type[size] = (byte) typeIndex;
+            size++;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Records that every applications_relations row up to {@code edgeId} has been added.
+         */
+        public synchronized void syncedTo(long edgeId) {
+            syncedEdgeId = Math.max(syncedEdgeId, edgeId);
+        }
+
+        public synchronized long syncedEdgeId() {
+            return syncedEdgeId;
+        }
+
+        public synchronized RelationGraph build() {
+            long[] nodes = new long[size * 2];
+            System.arraycopy(from, 0, nodes, 0, size);
+            System.arraycopy(to, 0, nodes, size, size);
+            Arrays.sort(nodes);
+            int unique = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                if (unique == 0 || nodes[i] != nodes[unique - 1]) {
+                    nodes[unique++] = nodes[i];
+                }
+            }
+            nodes = Arrays.copyOf(nodes, unique);
+            if (unique >= 1 << 27) {
+                throw new IllegalStateException("Relation graph too large: " + unique + " applications");
+            }
+
+            // each edge as (from, to, type) positions, sorted so duplicates are adjacent
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                long f = Arrays.binarySearch(nodes, from[i]);
+                long t = Arrays.binarySearch(nodes, to[i]);
+                packed[i] = (f << 36) | (t << 8) | type[i];
+            }
+            Arrays.sort(packed);
+            int edges = 0;
+            for (int i = 0; i < packed.length; i++) {
+                if (edges == 0 || packed[i] != packed[edges - 1]) {
+                    packed[edges++] = packed[i];
+                }
+            }
+
+            int[] parentStart = new int[unique + 1];
+            int[] parents = new int[edges];
+            byte[] parentTypes = new byte[edges];
+            int[] childStart = new int[unique + 1];
+            for (int i = 0; i < edges; i++) {
+                parentStart[(int) (packed[i] >>> 36) + 1]++;
+                childStart[(int) (packed[i] >>> 8 & 0xFFFFFFF) + 1]++;
+            }
+            for (int i = 0; i < unique; i++) {
+                parentStart[i + 1] += parentStart[i];
+                childStart[i + 1] += childStart[i];
+            }
+            int[] children = new int[edges];
+            byte[] childTypes = new byte[edges];
+            int[] childFill = Arrays.copyOf(childStart, unique);
+            for (int i = 0; i < edges; i++) {
+                int f = (int) (packed[i] >>> 36);
+                int t = (int) (packed[i] >>> 8 & 0xFFFFFFF);
+                byte edgeType = (byte) packed[i];
+                // packed is sorted by from, so parents fill in order
+                parents[i] = t;
+                parentTypes[i] = edgeType;
+                int slot = childFill[t]++;
+                children[slot] = f;
+                childTypes[slot] = edgeType;
+            }
+            return new RelationGraph(nodes, parentStart, parents, parentTypes, childStart, children, childTypes,
+                    types.toArray(new String[0]), syncedEdgeId);
+        }
+    }
+}
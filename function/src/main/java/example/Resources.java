@@ -0,0 +1,190 @@
+package example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.rdsdata.RdsDataClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Heavyweight objects shared by every handler in the container. Each one is created on first use
+ * and then reused across warm invocations: the SDK clients share one pooled HTTP client, the JSON
+ * mapper and the USPTO API HttpClient are thread-safe singletons, and the JDBC connection is
+ * validated before it is handed out and reopened if the database dropped it.
+ * <p>
+ * Nothing obtained from here may be closed by the caller.
+ */
+public final class Resources {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectWriter OBJECT_WRITER = OBJECT_MAPPER.writer();
+
+    private static SdkHttpClient sdkHttpClient;
+    private static S3Client s3Client;
+    private static RdsDataClient rdsDataClient;
+    private static DynamoDbClient dynamoDbClient;
+    private static SecretsManagerClient secretsManagerClient;
+    private static HttpClient httpClient;
+    private static ApiClient usptoApi;
+    private static PageCache pageCache;
+
+    private static Connection connection;
+    private static String connectionUrl;
+
+    private Resources() {
+    }
+
+    public static ObjectMapper objectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    public static ObjectWriter objectWriter() {
+        return OBJECT_WRITER;
+    }
+
+    public static synchronized S3Client s3() {
+        if (s3Client == null) {
+            s3Client = S3Client.builder()
+                    .httpClient(sdkHttpClient())
+                    .build();
+        }
+        return s3Client;
+    }
+
+    public static synchronized RdsDataClient rdsData() {
+        if (rdsDataClient == null) {
+            rdsDataClient = RdsDataClient.builder()
+                    .region(Region.US_EAST_1)
+                    .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
+                    .httpClient(sdkHttpClient())
+                    .build();
+        }
+        return rdsDataClient;
+    }
+
+    public static synchronized DynamoDbClient dynamoDb() {
+        if (dynamoDbClient == null) {
+            dynamoDbClient = DynamoDbClient.builder()
+                    .region(Region.US_EAST_2)
+                    .httpClient(sdkHttpClient())
+                    .build();
+        }
+        return dynamoDbClient;
+    }
+
+    public static synchronized SecretsManagerClient secretsManager() {
+        if (secretsManagerClient == null) {
+            secretsManagerClient = SecretsManagerClient.builder()
+                    .httpClient(sdkHttpClient())
+                    .build();
+        }
+        return secretsManagerClient;
+    }
+
+    /**
+     * Reads a JSON secret, such as the username/password secret RDS keeps for a cluster.
+     */
+    public static JsonNode secretJson(String secretArn) throws IOException {
+        String secret = secretsManager().getSecretValue(GetSecretValueRequest.builder()
+                .secretId(secretArn)
+                .build()).secretString();
+        return OBJECT_MAPPER.readTree(secret);
+    }
+
+    /**
+     * Client for the USPTO APIs. HTTP/2 lets the backfill workers multiplex onto one connection.
+     */
+    public static synchronized HttpClient httpClient() {
+        if (httpClient == null) {
+            httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Rate-limited, retrying front for {@link #httpClient()}; one limiter for the whole container.
+     */
+    public static synchronized ApiClient usptoApi() {
+        if (usptoApi == null) {
+            usptoApi = ApiClient.fromEnvironment(httpClient());
+        }
+        return usptoApi;
+    }
+
+    /**
+     * Cache of USPTO API pages in /tmp, kept across warm invocations.
+     */
+    public static synchronized PageCache pageCache() throws IOException {
+        if (pageCache == null) {
+            pageCache = PageCache.fromEnvironment();
+        }
+        return pageCache;
+    }
+
+    /**
+     * Returns the cached connection if it still answers within two seconds, otherwise opens a new
+     * one. Callers leave it open; a transaction left over from a failed invocation is rolled back
+     * before the connection is handed out again.
+     */
+    public static synchronized Connection jdbcConnection(String url, String user, String password) throws SQLException {
+        if (connection != null && url.equals(connectionUrl) && isUsable(connection)) {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            return connection;
+        }
+        closeQuietly(connection);
+        System.out.println("Opening JDBC connection to " + url);
+        connection = DriverManager.getConnection(url, user, password);
+        connectionUrl = url;
+        return connection;
+    }
+
+    private static boolean isUsable(Connection con) {
+        try {
+            return !con.isClosed() && con.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection con) {
+        if (con == null) {
+            return;
+        }
+        try {
+            con.close();
+        } catch (SQLException e) {
+            System.out.println("Ignoring error closing stale JDBC connection: " + e.getMessage());
+        }
+    }
+
+    private static SdkHttpClient sdkHttpClient() {
+        if (sdkHttpClient == null) {
+            sdkHttpClient = ApacheHttpClient.builder()
+                    .maxConnections(ProcessS3AppPatentEventLambda.intEnv("SDK_MAX_CONNECTIONS", 64))
+                    .connectionTimeout(Duration.ofSeconds(5))
+                    .tcpKeepAlive(true)
+                    .build();
+        }
+        return sdkHttpClient;
+    }
+}
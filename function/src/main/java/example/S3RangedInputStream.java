@@ -0,0 +1,136 @@
+package example;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sequential view of an S3 object assembled from parallel ranged GETs.
+ * Up to {@code readAhead} chunks are kept in flight ahead of the reader, so parsing the
+ * head of the object overlaps with downloading the rest of it, and memory stays bounded
+ * at roughly {@code readAhead * chunkSize} bytes.
+ */
+public class S3RangedInputStream extends InputStream {
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String key;
+    private final long contentLength;
+    private final int chunkSize;
+    private final int readAhead;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private long nextRangeStart = 0;
+    private byte[] current = new byte[0];
+    private int position = 0;
+    private boolean closed = false;
+
+    public S3RangedInputStream(S3Client s3Client, String bucket, String key, long contentLength, int chunkSize, int readAhead) {
+        if (chunkSize <= 0 || readAhead <= 0) {
+            throw new IllegalArgumentException("chunkSize and readAhead must be positive");
+        }
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.contentLength = contentLength;
+        this.chunkSize = chunkSize;
+        this.readAhead = readAhead;
+        this.executor = Executors.newFixedThreadPool(readAhead, runnable -> {
+            Thread thread = new Thread(runnable, "s3-range-" + key);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRanges();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Future<byte[]> future : inFlight) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+        executor.shutdownNow();
+    }
+
+    private boolean ensureChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (position == current.length) {
+            Future<byte[]> next = inFlight.pollFirst();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for s3://" + bucket + "/" + key);
+            } catch (ExecutionException e) {
+                throw new IOException("Ranged GET failed for s3://" + bucket + "/" + key, e.getCause());
+            }
+            position = 0;
+            scheduleRanges();
+        }
+        return true;
+    }
+
+    private void scheduleRanges() {
+        while (inFlight.size() < readAhead && nextRangeStart < contentLength) {
+            long start = nextRangeStart;
+            long end = Math.min(start + chunkSize, contentLength) - 1;
+            nextRangeStart = end + 1;
+            inFlight.addLast(executor.submit(() -> fetchRange(start, end)));
+        }
+    }
+
+    private byte[] fetchRange(long start, long end) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build();
+        return s3Client.getObjectAsBytes(request).asByteArrayUnsafe();
+    }
+}
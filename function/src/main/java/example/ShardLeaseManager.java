@@ -0,0 +1,280 @@
+package example;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits an API offset space into shards stored in DynamoDB and hands them out to concurrent
+ * invocations through leases.
+ * <p>
+ * Every shard item holds its [ShardStart, ShardEnd) range, the NextOffset still to be loaded and,
+ * while claimed, a LeaseOwner and LeaseExpiry. Claims, heartbeats and completion are all
+ * conditional writes, so two invocations can never own the same shard at once, and a shard whose
+ * owner died becomes claimable again once its lease expires, resuming at the last recorded
+ * NextOffset.
+ */
+public class ShardLeaseManager {
+
+    public static final String DEFAULT_TABLE = "IngestShardLeases";
+
+    private static final String OPEN = "OPEN";
+    private static final String DONE = "DONE";
+
+    public record Shard(String key, int start, int end, int nextOffset) {
+    }
+
+    public interface PageLoader {
+        /**
+         * Fetches a page and stages its records in the loader without committing them.
+         *
+         * @return number of records on the page; 0 means the API has nothing at {@code offset} yet
+         */
+        long stage(int offset, int rows) throws Exception;
+    }
+
+    private final DynamoDbClient ddb;
+    private final String tableName;
+    private final String jobName;
+    private final String owner;
+    private final long leaseMillis;
+
+    public ShardLeaseManager(DynamoDbClient ddb, String tableName, String jobName, String owner, long leaseMillis) {
+        this.ddb = ddb;
+        this.tableName = tableName;
+        this.jobName = jobName;
+        this.owner = owner;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Creates the shard items for [start, end) unless they already exist; safe to call from every
+     * invocation. Shards are keyed by job name and start offset, so the same job must always be
+     * laid out with the same start and shard size.
+     */
+    public void ensureShards(int start, int end, int shardSize) {
+        for (long shardStart = start; shardStart < end; shardStart += shardSize) {
+            long shardEnd = Math.min(shardStart + shardSize, end);
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("ShardKey", s(shardKey(shardStart)));
+            item.put("JobName", s(jobName));
+            item.put("ShardStart", n(shardStart));
+            item.put("ShardEnd", n(shardEnd));
+            item.put("NextOffset", n(shardStart));
+            item.put("ShardStatus", s(OPEN));
+            try {
+                ddb.putItem(PutItemRequest.builder()
+                        .tableName(tableName)
+                        .item(item)
+                        .conditionExpression("attribute_not_exists(ShardKey)")
+                        .build());
+            } catch (ConditionalCheckFailedException e) {
+                // already created by this or another invocation
+            }
+        }
+    }
+
+    /**
+     * Claims an open shard that is unleased or whose lease has expired.
+     *
+     * @return the claimed shard, or null if nothing is left to claim
+     */
+    public Shard claim() {
+        return claim(Set.of());
+    }
+
+    /**
+     * Like {@link #claim()}, passing over the shards in {@code skip}.
+     */
+    public Shard claim(Set<String> skip) {
+        long now = System.currentTimeMillis();
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":job", s(jobName));
+        values.put(":open", s(OPEN));
+        values.put(":now", n(now));
+
+        List<Map<String, AttributeValue>> candidates = new ArrayList<>();
+        ddb.scanPaginator(ScanRequest.builder()
+                .tableName(tableName)
+                .filterExpression("JobName = :job AND ShardStatus = :open AND (attribute_not_exists(LeaseOwner) OR LeaseExpiry < :now)")
+                .expressionAttributeValues(values)
+                .consistentRead(true)
+                .build()).items().forEach(candidates::add);
+        // spread concurrent invocations over different shards instead of all racing for the first one
+        Collections.shuffle(candidates);
+
+        for (Map<String, AttributeValue> candidate : candidates) {
+            if (skip.contains(candidate.get("ShardKey").s())) {
+                continue;
+            }
+            Map<String, AttributeValue> claimValues = new HashMap<>(values);
+            claimValues.remove(":job");
+            claimValues.put(":owner", s(owner));
+            claimValues.put(":expiry", n(now + leaseMillis));
+            try {
+                ddb.updateItem(UpdateItemRequest.builder()
+                        .tableName(tableName)
+                        .key(key(candidate.get("ShardKey").s()))
+                        .updateExpression("SET LeaseOwner = :owner, LeaseExpiry = :expiry")
+                        .conditionExpression("ShardStatus = :open AND (attribute_not_exists(LeaseOwner) OR LeaseExpiry < :now)")
+                        .expressionAttributeValues(claimValues)
+                        .build());
+                return new Shard(candidate.get("ShardKey").s(),
+                        Integer.parseInt(candidate.get("ShardStart").n()),
+                        Integer.parseInt(candidate.get("ShardEnd").n()),
+                        Integer.parseInt(candidate.get("NextOffset").n()));
+            } catch (ConditionalCheckFailedException e) {
+                // somebody else got there first
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extends the lease without recording progress.
+     *
+     * @return false if the lease was lost to another invocation
+     */
+    public boolean renew(Shard shard) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":owner", s(owner));
+        values.put(":expiry", n(System.currentTimeMillis() + leaseMillis));
+        return ownedUpdate(shard, "SET LeaseExpiry = :expiry", values);
+    }
+
+    /**
+     * Records progress and extends the lease.
+     *
+     * @return false if the lease was lost to another invocation, in which case the caller must stop
+     */
+    public boolean heartbeat(Shard shard, int nextOffset) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":owner", s(owner));
+        values.put(":expiry", n(System.currentTimeMillis() + leaseMillis));
+        values.put(":next", n(nextOffset));
+        return ownedUpdate(shard, "SET LeaseExpiry = :expiry, NextOffset = :next", values);
+    }
+
+    public boolean complete(Shard shard, int nextOffset) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":owner", s(owner));
+        values.put(":done", s(DONE));
+        values.put(":next", n(nextOffset));
+        return ownedUpdate(shard, "SET ShardStatus = :done, NextOffset = :next REMOVE LeaseOwner, LeaseExpiry", values);
+    }
+
+    public void release(Shard shard) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":owner", s(owner));
+        ownedUpdate(shard, "REMOVE LeaseOwner, LeaseExpiry", values);
+    }
+
+    /**
+     * Claims and works through shards, {@code rows} records per page, until no shard is left or the
+     * invocation is about to run out of time. Offsets advance by the records a page actually held,
+     * so a short page is followed by one starting right after its last record, and a shard is
+     * completed only once its records reach its end. An empty page means the API has nothing at
+     * that offset (yet): the shard is released with its progress and left alone for the rest of
+     * the invocation, so shards past the end of the collection stay open and cost one empty
+     * request per run until records reach them.
+     * <p>
+     * A page can take longer than the lease (the API client retries), so the lease is renewed
+     * after each page is staged and before {@code loader} commits it. If another invocation has
+     * taken the shard over by then, the page is discarded instead of loaded a second time.
+     *
+     * @return number of records loaded
+     */
+    public long processShards(int rows, BulkLoader loader, PageLoader pages, Context context) throws Exception {
+        long total = 0;
+        Set<String> exhausted = new HashSet<>();
+        Shard shard;
+        while (hasTimeLeft(context) && (shard = claim(exhausted)) != null) {
+            System.out.println("Claimed shard " + shard.key() + " at offset " + shard.nextOffset());
+            int offset = shard.nextOffset();
+            try {
+                while (offset < shard.end() && hasTimeLeft(context)) {
+                    int pageRows = Math.min(rows, shard.end() - offset);
+                    long records = pages.stage(offset, pageRows);
+                    if (records > 0 && !renew(shard)) {
+                        loader.discard();
+                        System.out.println("Lost lease on shard " + shard.key() + " before committing offset " + offset);
+                        break;
+                    }
+                    if (records == 0) {
+                        System.out.println("No records at offset " + offset + " of shard " + shard.key() + " yet");
+                        exhausted.add(shard.key());
+                        break;
+                    }
+                    loader.flush();
+                    total += records;
+                    offset += (int) records;
+                    if (offset < shard.end() && !heartbeat(shard, offset)) {
+                        System.out.println("Lost lease on shard " + shard.key());
+                        break;
+                    }
+                }
+                if (offset >= shard.end()) {
+                    complete(shard, offset);
+                } else {
+                    // a lost lease makes both updates no-ops
+                    heartbeat(shard, offset);
+                    release(shard);
+                }
+            } catch (Exception e) {
+                loader.discard();
+                release(shard);
+                throw e;
+            }
+        }
+        return total;
+    }
+
+    private boolean hasTimeLeft(Context context) {
+        return context == null || context.getRemainingTimeInMillis() > leaseMillis / 2;
+    }
+
+    private boolean ownedUpdate(Shard shard, String updateExpression, Map<String, AttributeValue> values) {
+        try {
+            ddb.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(key(shard.key()))
+                    .updateExpression(updateExpression)
+                    .conditionExpression("LeaseOwner = :owner")
+                    .expressionAttributeValues(values)
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private String shardKey(long shardStart) {
+        return String.format("%s#%010d", jobName, shardStart);
+    }
+
+    private static Map<String, AttributeValue> key(String shardKey) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("ShardKey", s(shardKey));
+        return key;
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(long value) {
+        return AttributeValue.builder().n(Long.toString(value)).build();
+    }
+}
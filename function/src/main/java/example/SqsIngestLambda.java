@@ -0,0 +1,126 @@
+package example;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Entry point for S3 notifications delivered through an SQS queue, so bursts of new dumps are
+ * smoothed by the queue and concurrency is set on the event source mapping.
+ * <p>
+ * Every message body is an S3 event notification; all objects of all messages in the batch are
+ * ingested concurrently through the same path as {@link ProcessS3AppPatentEventLambda}. Only
+ * messages with a failed object (or a body that cannot be read) are reported back in
+ * batchItemFailures, so SQS redelivers just those; the event source mapping must have
+ * ReportBatchItemFailures enabled. s3:TestEvent messages are acknowledged and ignored.
+ */
+public class SqsIngestLambda implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    /**
+     * Ingests one object and reports the outcome without throwing.
+     */
+    public interface Ingester {
+        ProcessS3AppPatentEventLambda.RecordResult ingest(String bucket, String key);
+    }
+
+    private final ProcessS3AppPatentEventLambda processor;
+    private final Ingester ingester;
+
+    public SqsIngestLambda() {
+        this(new ProcessS3AppPatentEventLambda());
+    }
+
+    SqsIngestLambda(ProcessS3AppPatentEventLambda processor) {
+        this(processor, processor::ingest);
+    }
+
+    /**
+     * Lets the batch handling run against a stand-in ingester, e.g. one backed by an in-memory
+     * queue of canned results.
+     */
+    SqsIngestLambda(ProcessS3AppPatentEventLambda processor, Ingester ingester) {
+        this.processor = processor;
+        this.ingester = ingester;
+    }
+
+    private record S3Object(String bucket, String key) {
+    }
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        Set<String> failedMessageIds = new LinkedHashSet<>();
+        List<String> taskMessageIds = new ArrayList<>();
+        List<Callable<ProcessS3AppPatentEventLambda.RecordResult>> tasks = new ArrayList<>();
+
+        for (SQSMessage message : event.getRecords()) {
+            try {
+                for (S3Object object : s3Objects(message.getBody())) {
+                    taskMessageIds.add(message.getMessageId());
+                    tasks.add(() -> ingester.ingest(object.bucket(), object.key()));
+                }
+            } catch (Exception e) {
+                System.out.println("Unreadable message " + message.getMessageId() + ": " + e.getMessage());
+                failedMessageIds.add(message.getMessageId());
+            }
+        }
+
+        try {
+            List<ProcessS3AppPatentEventLambda.RecordResult> results = processor.ingestAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                if (!results.get(i).succeeded()) {
+                    failedMessageIds.add(taskMessageIds.get(i));
+                }
+            }
+            System.out.println("Ingest summary " + Resources.objectMapper().writeValueAsString(results));
+        } catch (Exception e) {
+            // the batch as a whole broke down; have every message that had work redelivered
+            System.out.println("Exception " + e.getMessage());
+            failedMessageIds.addAll(taskMessageIds);
+        } finally {
+            processor.finishInvocation();
+        }
+
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>(failedMessageIds.size());
+        for (String messageId : failedMessageIds) {
+            failures.add(new SQSBatchResponse.BatchItemFailure(messageId));
+        }
+        System.out.println(event.getRecords().size() + " messages, " + failures.size() + " failed");
+        return new SQSBatchResponse(failures);
+    }
+
+    /**
+     * Pulls the bucket and (URL-decoded) key of every record out of an S3 event notification.
+     */
+    private static List<S3Object> s3Objects(String body) throws Exception {
+        JsonNode notification = Resources.objectMapper().readTree(body);
+        List<S3Object> objects = new ArrayList<>();
+        if ("s3:TestEvent".equals(notification.path("Event").asText())) {
+            return objects;
+        }
+        JsonNode records = notification.path("Records");
+        if (!records.isArray()) {
+            throw new IllegalArgumentException("not an S3 event notification");
+        }
+        for (JsonNode record : records) {
+            JsonNode s3 = record.path("s3");
+            String bucket = s3.path("bucket").path("name").asText();
+            String key = s3.path("object").path("key").asText();
+            if (bucket.isEmpty() || key.isEmpty()) {
+                throw new IllegalArgumentException("S3 record without bucket or key");
+            }
+            objects.add(new S3Object(bucket, URLDecoder.decode(key, StandardCharsets.UTF_8)));
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,89 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Splits a concatenated USPTO XML dump into individual documents while it is still being read,
+ * so no random access to the file is needed. Documents start at each line beginning with
+ * {@code <?xml}, the same boundary DumpFileXml uses. Zip archives are unpacked on the fly and
+ * only their .xml entries are read.
+ */
+public class XmlDocumentStream implements DocumentSource {
+
+    private static final String XML_DECLARATION = "<?xml";
+
+    private final InputStream source;
+    private final ZipInputStream zipInput;
+    private BufferedReader reader;
+    private String pendingLine;
+
+    public XmlDocumentStream(InputStream source, boolean zipped) throws IOException {
+        this.source = source;
+        if (zipped) {
+            this.zipInput = new ZipInputStream(source);
+            this.reader = nextZipEntryReader();
+        } else {
+            this.zipInput = null;
+            this.reader = newReader(source);
+        }
+    }
+
+    @Override
+    public String next() throws IOException {
+        while (reader != null) {
+            String document = readDocument();
+            if (document != null) {
+                return document;
+            }
+            reader = zipInput != null ? nextZipEntryReader() : null;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader = null;
+        source.close();
+    }
+
+    private String readDocument() throws IOException {
+        StringBuilder document = new StringBuilder();
+        String line = pendingLine != null ? pendingLine : reader.readLine();
+        pendingLine = null;
+        while (line != null && document.length() == 0 && line.isBlank()) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        document.append(line).append('\n');
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(XML_DECLARATION)) {
+                pendingLine = line;
+                break;
+            }
+            document.append(line).append('\n');
+        }
+        return document.toString();
+    }
+
+    private BufferedReader nextZipEntryReader() throws IOException {
+        ZipEntry entry;
+        while ((entry = zipInput.getNextEntry()) != null) {
+            if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".xml")) {
+                return newReader(zipInput);
+            }
+        }
+        return null;
+    }
+
+    private static BufferedReader newReader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+}
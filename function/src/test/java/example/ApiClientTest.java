@@ -0,0 +1,176 @@
+package example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link ApiClient} against a local HTTP stub that answers from a script of responses.
+ */
+class ApiClientTest {
+
+    /** One scripted answer: wait {@code delayMillis}, then reply. */
+    private record Reply(int status, String retryAfter, long delayMillis, String body) {
+
+        static Reply ok(String body) {
+            return new Reply(200, null, 0, body);
+        }
+
+        static Reply status(int status) {
+            return new Reply(status, null, 0, "");
+        }
+    }
+
+    private final Queue<Reply> script = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::answer);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        Reply reply = script.poll();
+        if (reply == null) {
+            reply = Reply.status(500);
+        }
+        try {
+            Thread.sleep(reply.delayMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (reply.retryAfter() != null) {
+            exchange.getResponseHeaders().add("Retry-After", reply.retryAfter());
+        }
+        byte[] body = reply.body().getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.sendResponseHeaders(reply.status(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (IOException e) {
+            // the client gave up on this one already
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ApiClient client(RateLimiter limiter) {
+        return new ApiClient(HttpClient.newHttpClient(), limiter, 4, 10, 2000, Duration.ofMillis(500));
+    }
+
+    private HttpResponse<String> get(ApiClient client) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/records")).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void waitsForRetryAfterOn429() throws Exception {
+        script.add(new Reply(429, "1", 0, ""));
+        script.add(Reply.ok("page"));
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = get(client(new RateLimiter(100, 10)));
+
+        assertEquals("page", response.body());
+        assertEquals(2, requests.get());
+        assertTrue(System.nanoTime() - start >= 900_000_000L, "Retry-After was not honored");
+    }
+
+    @Test
+    void retriesServerErrors() throws Exception {
+        script.add(Reply.status(503));
+        script.add(Reply.status(502));
+        script.add(Reply.ok("page"));
+
+        assertEquals("page", get(client(new RateLimiter(100, 10))).body());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void retriesTimedOutResponse() throws Exception {
+        script.add(new Reply(200, null, 2000, "too late"));
+        script.add(Reply.ok("page"));
+
+        assertEquals("page", get(client(new RateLimiter(100, 10))).body());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void failsFastOn404() {
+        script.add(Reply.status(404));
+
+        ApiClient.ApiException e = assertThrows(ApiClient.ApiException.class, () -> get(client(new RateLimiter(100, 10))));
+        assertEquals(404, e.getStatusCode());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        for (int i = 0; i < 4; i++) {
+            script.add(Reply.status(503));
+        }
+
+        ApiClient.ApiException e = assertThrows(ApiClient.ApiException.class, () -> get(client(new RateLimiter(100, 10))));
+        assertEquals(503, e.getStatusCode());
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    void slowsDownAfter429s() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 10);
+        ApiClient client = client(limiter);
+        script.add(new Reply(429, "0", 0, ""));
+        script.add(new Reply(429, "0", 0, ""));
+        script.add(Reply.ok("page"));
+
+        assertEquals("page", get(client).body());
+        // two cuts by a quarter, one success winning back 1% of the configured rate
+        assertEquals(100 * 0.75 * 0.75 + 1, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    void rateLimiterRecoversButStaysAboveFloor() {
+        RateLimiter limiter = new RateLimiter(100, 10);
+        for (int i = 0; i < 50; i++) {
+            limiter.onThrottled(0);
+        }
+        assertEquals(10, limiter.getRate(), 1e-9);
+        for (int i = 0; i < 200; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(100, limiter.getRate(), 1e-9);
+    }
+}
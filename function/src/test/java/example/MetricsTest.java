@@ -0,0 +1,111 @@
+package example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flushes {@link Metrics} into a buffer and reads the lines back as CloudWatch EMF documents.
+ */
+class MetricsTest {
+
+    private static List<JsonNode> flush(Metrics metrics) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8)) {
+            metrics.flush(out);
+        }
+        List<JsonNode> documents = new ArrayList<>();
+        for (String line : buffer.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) {
+                documents.add(Resources.objectMapper().readTree(line));
+            }
+        }
+        return documents;
+    }
+
+    /** Metric name to unit, from the document's _aws directive. */
+    private static Map<String, String> units(JsonNode document) {
+        Map<String, String> units = new HashMap<>();
+        for (JsonNode metric : document.path("_aws").path("CloudWatchMetrics").get(0).path("Metrics")) {
+            units.put(metric.path("Name").asText(), metric.path("Unit").asText());
+        }
+        return units;
+    }
+
+    @Test
+    void writesCountersGaugesAndTimersAsEmf() throws Exception {
+        Metrics metrics = new Metrics("PatentIngest", Map.of("Function", "Test"));
+        metrics.count("RowsWritten", 3);
+        metrics.count("RowsWritten", 4);
+        metrics.gauge("LookupCacheSize", 12, Metrics.Unit.COUNT);
+        metrics.rate("S3DownloadBytesPerSec", 1000, 2_000_000_000L, Metrics.Unit.BYTES_PER_SECOND);
+        metrics.time("BatchFlushLatency", 5_000_000);
+
+        List<JsonNode> documents = flush(metrics);
+
+        assertEquals(1, documents.size());
+        JsonNode document = documents.get(0);
+        JsonNode directive = document.path("_aws").path("CloudWatchMetrics").get(0);
+        assertEquals("PatentIngest", directive.path("Namespace").asText());
+        assertEquals("Function", directive.path("Dimensions").get(0).get(0).asText());
+        assertEquals("Test", document.path("Function").asText());
+        assertTrue(document.path("_aws").path("Timestamp").asLong() > 0);
+
+        assertEquals(7, document.path("RowsWritten").asDouble(), 1e-9);
+        assertEquals(12, document.path("LookupCacheSize").asDouble(), 1e-9);
+        assertEquals(500, document.path("S3DownloadBytesPerSec").asDouble(), 1e-9);
+        assertEquals(5, document.path("BatchFlushLatencyMax").asDouble(), 1e-9);
+        assertEquals(1, document.path("BatchFlushLatencyCount").asDouble(), 1e-9);
+        // bucketed to within about 6%
+        assertEquals(5, document.path("BatchFlushLatencyP50").asDouble(), 0.35);
+
+        Map<String, String> units = units(document);
+        assertEquals("Count", units.get("RowsWritten"));
+        assertEquals("Bytes/Second", units.get("S3DownloadBytesPerSec"));
+        assertEquals("Milliseconds", units.get("BatchFlushLatencyP99"));
+        assertEquals("Count", units.get("BatchFlushLatencyCount"));
+    }
+
+    @Test
+    void splitsDocumentsAtOneHundredMetrics() throws Exception {
+        Metrics metrics = new Metrics("PatentIngest", Map.of("Function", "Test"));
+        for (int i = 0; i < 150; i++) {
+            metrics.count(String.format("Counter%03d", i), i);
+        }
+
+        List<JsonNode> documents = flush(metrics);
+
+        assertEquals(2, documents.size());
+        assertEquals(100, units(documents.get(0)).size());
+        assertEquals(50, units(documents.get(1)).size());
+        assertEquals(149, documents.get(1).path("Counter149").asLong());
+    }
+
+    @Test
+    void flushResets() throws Exception {
+        Metrics metrics = new Metrics("PatentIngest", Map.of());
+        metrics.count("RowsWritten", 1);
+
+        assertEquals(1, flush(metrics).size());
+        assertTrue(flush(metrics).isEmpty());
+    }
+
+    @Test
+    void noopRecordsNothing() throws Exception {
+        Metrics.NOOP.count("RowsWritten", 1);
+        Metrics.NOOP.time("BatchFlushLatency", 1_000_000);
+        Metrics.NOOP.gauge("LookupCacheSize", 1, Metrics.Unit.COUNT);
+
+        assertTrue(flush(Metrics.NOOP).isEmpty());
+    }
+}
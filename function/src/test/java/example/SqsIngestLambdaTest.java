@@ -0,0 +1,112 @@
+package example;
+
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link SqsIngestLambda} over hand-built SQS batches with an ingester that fails the keys it
+ * is told to, so only the batch handling is under test.
+ */
+class SqsIngestLambdaTest {
+
+    private final Queue<String> ingested = new ConcurrentLinkedQueue<>();
+
+    private SqsIngestLambda lambda(Set<String> failingKeys) {
+        return new SqsIngestLambda(new ProcessS3AppPatentEventLambda(), (bucket, key) -> {
+            ingested.add(bucket + "/" + key);
+            if (failingKeys.contains(key)) {
+                return ProcessS3AppPatentEventLambda.RecordResult.failed(bucket, key, new IllegalStateException("broken archive"), false);
+            }
+            return new ProcessS3AppPatentEventLambda.RecordResult(bucket, key, true, 1, 0, 1, 1, 0, null, false);
+        });
+    }
+
+    private static SQSMessage message(String id, String body) {
+        SQSMessage message = new SQSMessage();
+        message.setMessageId(id);
+        message.setBody(body);
+        return message;
+    }
+
+    private static String notification(String bucket, String... keys) {
+        StringBuilder body = new StringBuilder("{\"Records\":[");
+        for (int i = 0; i < keys.length; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"eventName\":\"ObjectCreated:Put\",\"s3\":{\"bucket\":{\"name\":\"").append(bucket)
+                    .append("\"},\"object\":{\"key\":\"").append(keys[i]).append("\",\"size\":1}}}");
+        }
+        return body.append("]}").toString();
+    }
+
+    private static SQSEvent event(SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(List.of(messages));
+        return event;
+    }
+
+    private static List<String> failedIds(SQSBatchResponse response) {
+        return response.getBatchItemFailures().stream()
+                .map(SQSBatchResponse.BatchItemFailure::getItemIdentifier)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void reportsOnlyTheMessageWithAFailingKey() {
+        SQSBatchResponse response = lambda(Set.of("ipa240102.zip")).handleRequest(event(
+                message("m1", notification("dumps", "ipa240101.zip")),
+                message("m2", notification("dumps", "ipa240102.zip")),
+                message("m3", "{\"Service\":\"Amazon S3\",\"Event\":\"s3:TestEvent\",\"Bucket\":\"dumps\"}")), null);
+
+        assertEquals(List.of("m2"), failedIds(response));
+        assertEquals(Set.of("dumps/ipa240101.zip", "dumps/ipa240102.zip"), Set.copyOf(ingested));
+    }
+
+    @Test
+    void acknowledgesTestEvents() {
+        SQSBatchResponse response = lambda(Set.of()).handleRequest(event(
+                message("m1", "{\"Service\":\"Amazon S3\",\"Event\":\"s3:TestEvent\",\"Bucket\":\"dumps\"}")), null);
+
+        assertTrue(failedIds(response).isEmpty());
+        assertTrue(ingested.isEmpty());
+    }
+
+    @Test
+    void failsAMessageOnceWhenSeveralOfItsKeysFail() {
+        SQSBatchResponse response = lambda(Set.of("a.zip", "c.zip")).handleRequest(event(
+                message("m1", notification("dumps", "a.zip", "b.zip", "c.zip"))), null);
+
+        assertEquals(List.of("m1"), failedIds(response));
+        assertEquals(3, ingested.size());
+    }
+
+    @Test
+    void decodesKeys() {
+        lambda(Set.of()).handleRequest(event(
+                message("m1", notification("dumps", "2024/ipa+240101%281%29.zip"))), null);
+
+        assertEquals(List.of("dumps/2024/ipa 240101(1).zip"), new ArrayList<>(ingested));
+    }
+
+    @Test
+    void reportsUnreadableBodies() {
+        SQSBatchResponse response = lambda(Set.of()).handleRequest(event(
+                message("m1", "not json"),
+                message("m2", "{\"Records\":[{\"s3\":{\"bucket\":{\"name\":\"dumps\"}}}]}"),
+                message("m3", notification("dumps", "ipa240101.zip"))), null);
+
+        assertEquals(List.of("m1", "m2"), failedIds(response));
+        assertEquals(List.of("dumps/ipa240101.zip"), new ArrayList<>(ingested));
+    }
+}